@@ -1,25 +1,44 @@
 package org.lucee.extension.aws.dynamodb;
 
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.lucee.extension.aws.dynamodb.util.CommonUtil;
 
 import lucee.commons.io.log.Log;
+import lucee.loader.engine.CFMLEngineFactory;
 import lucee.loader.util.Util;
+import lucee.runtime.type.Struct;
 import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
 import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.awscore.client.builder.AwsClientBuilder;
+import software.amazon.awssdk.core.client.config.ClientOverrideConfiguration;
+import software.amazon.awssdk.core.interceptor.Context;
+import software.amazon.awssdk.core.interceptor.ExecutionAttributes;
+import software.amazon.awssdk.core.interceptor.ExecutionInterceptor;
 import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
-import software.amazon.awssdk.services.dynamodb.DynamoDbClientBuilder;
 
 public class AmazonDynamoDBClient {
 
 	private static final String DEFAULT_HOST = "dynamodb.amazonaws.com";
+	// time an expired client stays open at least, and at most while requests are still running
+	private static final long RETIRE_GRACE = 10000L;
+	private static final long RETIRE_MAX = 600000L;
 	private static Map<String, AmazonDynamoDBClient> pool = new ConcurrentHashMap<>();
+	private static ScheduledExecutorService closer;
 
 	private DynamoDbClient client;
+	private volatile DynamoDbAsyncClient asyncClient;
 	private Log log;
 	private long created;
 	private String accessKeyId;
@@ -27,17 +46,48 @@ public class AmazonDynamoDBClient {
 	private String host;
 	private long liveTimeout;
 	private String region;
+	private HttpSettings settings;
+	private final PoolMetrics metrics = new PoolMetrics();
+	private final PoolMetrics asyncMetrics = new PoolMetrics();
+	private final AtomicInteger inFlight = new AtomicInteger();
+	private final ExecutionInterceptor inFlightCounter = new ExecutionInterceptor() {
+		@Override
+		public void beforeExecution(Context.BeforeExecution context, ExecutionAttributes executionAttributes) {
+			inFlight.incrementAndGet();
+		}
 
-	public static DynamoDbClient get(String accessKeyId, String secretAccessKey, String host, String region, long liveTimeout, Log log) {
-		String key = accessKeyId + ":" + secretAccessKey + ":" + host + ":" + region;
+		@Override
+		public void afterExecution(Context.AfterExecution context, ExecutionAttributes executionAttributes) {
+			inFlight.decrementAndGet();
+		}
 
-		if (log != null) {
-			log.debug("DynamoDBClient", "Requesting DynamoDB client for region: " + region + ", host: " + host);
+		@Override
+		public void onExecutionFailure(Context.FailedExecution context, ExecutionAttributes executionAttributes) {
+			inFlight.decrementAndGet();
 		}
+	};
+	private volatile long retired;
+	private volatile boolean closed;
 
+	/**
+	 * key of the pool for the given configuration, the secret is only part of it as a hash. Callers
+	 * that need the client often, compute the key once and keep the returned instance as long as it is
+	 * not expired.
+	 */
+	static String key(String accessKeyId, String secretAccessKey, String host, String region, HttpSettings settings) {
+		return accessKeyId + ":" + hash(secretAccessKey) + ":" + host + ":" + region + ":" + settings.key();
+	}
+
+	/**
+	 * returns the pooled client for that key, an expired client is replaced and closed as soon as the
+	 * requests still running with it are done
+	 */
+	static AmazonDynamoDBClient getInstance(String key, String accessKeyId, String secretAccessKey, String host, String region, long liveTimeout, HttpSettings settings,
+			Log log) {
 		AmazonDynamoDBClient client = pool.get(key);
 		if (client == null || client.isExpired()) {
 			synchronized (CommonUtil.createToken("AmazonDynamoDBClient", key)) {
+				client = pool.get(key);
 				if (client == null || client.isExpired()) {
 					if (log != null) {
 						if (client == null) {
@@ -47,21 +97,17 @@ public class AmazonDynamoDBClient {
 							log.info("DynamoDBClient", "Existing DynamoDB client expired, creating new one for region: " + region);
 						}
 					}
-					pool.put(key, client = new AmazonDynamoDBClient(accessKeyId, secretAccessKey, host, region, liveTimeout, log));
+					AmazonDynamoDBClient old = client;
+					pool.put(key, client = new AmazonDynamoDBClient(accessKeyId, secretAccessKey, host, region, liveTimeout, settings, log));
+					if (old != null) old.retire();
 				}
 			}
-
 		}
-		else {
-			if (log != null) {
-				log.debug("DynamoDBClient", "Reusing existing DynamoDB client for region: " + region);
-			}
-		}
-
-		return client.getDynamoDbClient();
+		return client;
 	}
 
-	private AmazonDynamoDBClient(String accessKeyId, String secretAccessKey, String host, String region, long liveTimeout, Log log) {
+	private AmazonDynamoDBClient(String accessKeyId, String secretAccessKey, String host, String region, long liveTimeout, HttpSettings settings, Log log) {
+		this.settings = settings;
 		this.accessKeyId = accessKeyId;
 		this.secretAccessKey = secretAccessKey;
 		this.host = host;
@@ -82,8 +128,14 @@ public class AmazonDynamoDBClient {
 	}
 
 	public DynamoDbClient create() {
-		DynamoDbClientBuilder builder = DynamoDbClient.builder();
+		return configure(DynamoDbClient.builder(), metrics).httpClientBuilder(settings.apache()).build();
+	}
 
+	public DynamoDbAsyncClient createAsync() {
+		return configure(DynamoDbAsyncClient.builder(), asyncMetrics).httpClientBuilder(settings.netty()).build();
+	}
+
+	private <B extends AwsClientBuilder<B, ?>> B configure(B builder, PoolMetrics metrics) {
 		// Set credentials
 		builder.credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create(accessKeyId, secretAccessKey)));
 
@@ -117,23 +169,112 @@ public class AmazonDynamoDBClient {
 			}
 		}
 
-		return builder.build();
+		// occupancy of the connection pool and the requests running (to know when the client can be closed)
+		builder.overrideConfiguration(ClientOverrideConfiguration.builder().addMetricPublisher(metrics).addExecutionInterceptor(inFlightCounter).build());
+
+		return builder;
+	}
+
+	/**
+	 * true if the client should no longer be used for new requests, it still works until it is closed
+	 */
+	public boolean isExpired() {
+		return retired != 0 || (created + liveTimeout) < System.currentTimeMillis();
+	}
+
+	public boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 * takes the client out of service, it gets closed in the background as soon as no requests are
+	 * running with it anymore. Users holding a reference to it see it as expired and switch to the new
+	 * one, the grace period gives them the time to do so.
+	 */
+	private void retire() {
+		retired = System.currentTimeMillis();
+		getCloser().schedule(this::closeWhenDrained, RETIRE_GRACE, TimeUnit.MILLISECONDS);
+	}
+
+	private void closeWhenDrained() {
+		int running = inFlight.get();
+		if (running > 0 && System.currentTimeMillis() - retired < RETIRE_MAX) {
+			getCloser().schedule(this::closeWhenDrained, 1000L, TimeUnit.MILLISECONDS);
+			return;
+		}
+		if (log != null && running > 0) {
+			log.warn("DynamoDBClient", "closing expired DynamoDB client with [" + running + "] requests still running");
+		}
+		try {
+			release();
+		}
+		catch (Exception e) {
+			if (log != null) log.error("DynamoDBClient", "failed to close expired DynamoDB client", e);
+		}
+	}
+
+	private static synchronized ScheduledExecutorService getCloser() {
+		if (closer == null) {
+			ScheduledThreadPoolExecutor stpe = new ScheduledThreadPoolExecutor(1, CommonUtil.createThreadFactory("dynamodb-client-closer"));
+			stpe.setRemoveOnCancelPolicy(true);
+			closer = stpe;
+		}
+		return closer;
 	}
 
-	private boolean isExpired() {
-		return (created + liveTimeout) < System.currentTimeMillis();
+	private static String hash(String str) {
+		if (str == null) return null;
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-256").digest(str.getBytes(StandardCharsets.UTF_8));
+			StringBuilder sb = new StringBuilder(digest.length * 2);
+			for (byte b: digest) {
+				sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+			}
+			return sb.toString();
+		}
+		catch (NoSuchAlgorithmException e) {
+			return Integer.toHexString(str.hashCode());
+		}
 	}
 
 	public DynamoDbClient getDynamoDbClient() {
 		return client;
 	}
 
-	public void release() {
+	public DynamoDbAsyncClient getDynamoDbAsyncClient() {
+		if (asyncClient == null) {
+			synchronized (this) {
+				if (asyncClient == null) {
+					if (closed) throw new IllegalStateException("DynamoDB client is closed");
+					asyncClient = createAsync();
+				}
+			}
+		}
+		return asyncClient;
+	}
+
+	/**
+	 * settings and occupancy of the connection pools (blocking and non blocking client)
+	 */
+	public Struct getPoolInfo() {
+		Struct info = CFMLEngineFactory.getInstance().getCreationUtil().createStruct(Struct.TYPE_LINKED);
+		info.setEL("settings", settings.getInfo());
+		info.setEL("inFlight", inFlight.get());
+		info.setEL("sync", metrics.getInfo());
+		if (asyncClient != null) info.setEL("async", asyncMetrics.getInfo());
+		return info;
+	}
+
+	public synchronized void release() {
+		closed = true;
 		if (log != null) {
 			log.debug("DynamoDBClient", "Releasing DynamoDB client resources");
 		}
 		if (client != null) {
 			client.close(); // SDK v2 clients should be closed
 		}
+		if (asyncClient != null) {
+			asyncClient.close();
+		}
 	}
 }
\ No newline at end of file
@@ -0,0 +1,131 @@
+package org.lucee.extension.aws.dynamodb;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import lucee.loader.engine.CFMLEngineFactory;
+import lucee.runtime.type.Struct;
+
+/**
+ * counters and latency histograms of the cache on this node. Everything recorded on the hot path is
+ * a striped adder, so concurrent requests do not contend on a shared counter.
+ */
+final class CacheMetrics {
+
+	final LongAdder hits = new LongAdder();
+	final LongAdder misses = new LongAdder();
+	final LongAdder puts = new LongAdder();
+	final LongAdder removes = new LongAdder();
+	final LongAdder errors = new LongAdder();
+	final LongAdder throttles = new LongAdder();
+	// items returned by scans, before they are checked in the JVM
+	final LongAdder scanned = new LongAdder();
+
+	final Histogram get = new Histogram();
+	final Histogram put = new Histogram();
+	final Histogram remove = new Histogram();
+	final Histogram contains = new Histogram();
+	final Histogram scan = new Histogram();
+	final Histogram batch = new Histogram();
+
+	public Struct getInfo() {
+		Struct info = CFMLEngineFactory.getInstance().getCreationUtil().createStruct(Struct.TYPE_LINKED);
+		info.setEL("hits", hits.sum());
+		info.setEL("misses", misses.sum());
+		info.setEL("puts", puts.sum());
+		info.setEL("removes", removes.sum());
+		info.setEL("errors", errors.sum());
+		info.setEL("throttles", throttles.sum());
+		info.setEL("scannedItems", scanned.sum());
+
+		Struct latency = CFMLEngineFactory.getInstance().getCreationUtil().createStruct(Struct.TYPE_LINKED);
+		latency.setEL("get", get.getInfo());
+		latency.setEL("put", put.getInfo());
+		latency.setEL("remove", remove.getInfo());
+		latency.setEL("contains", contains.getInfo());
+		latency.setEL("scan", scan.getInfo());
+		latency.setEL("batch", batch.getInfo());
+		info.setEL("latency", latency);
+		return info;
+	}
+
+	/**
+	 * latency histogram with two buckets per power of two (of microseconds), percentiles are reported as
+	 * the upper bound of the bucket they fall into, so they are at most about 40% off
+	 */
+	static final class Histogram {
+		private static final int BUCKETS = 64;
+
+		private final LongAdder[] buckets = new LongAdder[BUCKETS];
+		private final LongAdder total = new LongAdder();
+		private final LongAccumulator max = new LongAccumulator(Math::max, 0L);
+
+		Histogram() {
+			for (int i = 0; i < BUCKETS; i++) {
+				buckets[i] = new LongAdder();
+			}
+		}
+
+		/**
+		 * records the time passed since start (taken with System.nanoTime())
+		 */
+		public void record(long start) {
+			long nanos = System.nanoTime() - start;
+			if (nanos < 0) nanos = 0;
+			buckets[bucket(nanos / 1000L)].increment();
+			total.add(nanos);
+			max.accumulate(nanos);
+		}
+
+		public Struct getInfo() {
+			Struct info = CFMLEngineFactory.getInstance().getCreationUtil().createStruct(Struct.TYPE_LINKED);
+			long[] counts = new long[BUCKETS];
+			long n = 0;
+			for (int i = 0; i < BUCKETS; i++) {
+				counts[i] = buckets[i].sum();
+				n += counts[i];
+			}
+			long maxNanos = max.get();
+			info.setEL("count", n);
+			info.setEL("avg", n == 0 ? 0D : total.sum() / (double) n / 1000000D);
+			info.setEL("p50", percentile(counts, n, 0.50, maxNanos));
+			info.setEL("p95", percentile(counts, n, 0.95, maxNanos));
+			info.setEL("p99", percentile(counts, n, 0.99, maxNanos));
+			info.setEL("max", maxNanos / 1000000D);
+			return info;
+		}
+
+		/**
+		 * bucket 0 holds everything below a microsecond, after that every power of two is split in half
+		 */
+		private static int bucket(long micros) {
+			if (micros <= 0) return 0;
+			int log = 63 - Long.numberOfLeadingZeros(micros);
+			int half = micros >= (3L << log) / 2 ? 1 : 0;
+			return Math.min(BUCKETS - 1, 1 + 2 * log + half);
+		}
+
+		/**
+		 * upper bound of the bucket in microseconds
+		 */
+		private static double upperBound(int bucket) {
+			if (bucket == 0) return 1D;
+			int log = (bucket - 1) / 2;
+			return (bucket - 1) % 2 == 0 ? 1.5D * (1L << log) : (double) (2L << log);
+		}
+
+		/**
+		 * in milliseconds, never more than the max recorded
+		 */
+		private static double percentile(long[] counts, long n, double p, long maxNanos) {
+			if (n == 0) return 0D;
+			long rank = (long) Math.ceil(n * p);
+			long seen = 0;
+			for (int i = 0; i < counts.length; i++) {
+				seen += counts[i];
+				if (seen >= rank) return Math.min(upperBound(i) / 1000D, maxNanos / 1000000D);
+			}
+			return maxNanos / 1000000D;
+		}
+	}
+}
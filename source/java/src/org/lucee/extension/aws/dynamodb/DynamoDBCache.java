@@ -1,12 +1,40 @@
 package org.lucee.extension.aws.dynamodb;
 
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.lucee.extension.aws.dynamodb.util.AsyncUtil;
 import org.lucee.extension.aws.dynamodb.util.Coder;
+import org.lucee.extension.aws.dynamodb.util.CommonUtil;
 
 import lucee.commons.io.cache.CacheEntry;
 import lucee.commons.io.cache.CacheEntryFilter;
@@ -20,32 +48,72 @@ import lucee.runtime.exp.PageException;
 import lucee.runtime.type.Array;
 import lucee.runtime.type.Struct;
 import lucee.runtime.util.Cast;
+import software.amazon.awssdk.awscore.exception.AwsServiceException;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.AttributeDefinition;
 import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemRequest;
 import software.amazon.awssdk.services.dynamodb.model.BillingMode;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.CreateGlobalSecondaryIndexAction;
 import software.amazon.awssdk.services.dynamodb.model.CreateTableRequest;
 import software.amazon.awssdk.services.dynamodb.model.DeleteItemRequest;
 import software.amazon.awssdk.services.dynamodb.model.DeleteItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.DeleteRequest;
+import software.amazon.awssdk.services.dynamodb.model.DeleteTableRequest;
 import software.amazon.awssdk.services.dynamodb.model.DescribeTableRequest;
 import software.amazon.awssdk.services.dynamodb.model.DescribeTableResponse;
 import software.amazon.awssdk.services.dynamodb.model.DescribeTimeToLiveRequest;
 import software.amazon.awssdk.services.dynamodb.model.DescribeTimeToLiveResponse;
 import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
 import software.amazon.awssdk.services.dynamodb.model.GetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.GlobalSecondaryIndex;
 import software.amazon.awssdk.services.dynamodb.model.GlobalSecondaryIndexDescription;
+import software.amazon.awssdk.services.dynamodb.model.GlobalSecondaryIndexUpdate;
 import software.amazon.awssdk.services.dynamodb.model.KeySchemaElement;
 import software.amazon.awssdk.services.dynamodb.model.KeyType;
+import software.amazon.awssdk.services.dynamodb.model.KeysAndAttributes;
+import software.amazon.awssdk.services.dynamodb.model.Projection;
+import software.amazon.awssdk.services.dynamodb.model.ProjectionType;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.PutRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
 import software.amazon.awssdk.services.dynamodb.model.ResourceNotFoundException;
 import software.amazon.awssdk.services.dynamodb.model.ReturnValue;
 import software.amazon.awssdk.services.dynamodb.model.ScalarAttributeType;
 import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
-import software.amazon.awssdk.services.dynamodb.model.ScanResponse;
 import software.amazon.awssdk.services.dynamodb.model.TableDescription;
+import software.amazon.awssdk.services.dynamodb.model.TimeToLiveSpecification;
 import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.UpdateTableRequest;
+import software.amazon.awssdk.services.dynamodb.model.UpdateTimeToLiveRequest;
+import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
 
 public class DynamoDBCache extends CacheSupport {
-	private static final Map<String, String> TTL_ATTR_NAMES = Map.of("#ttl", "ttl");
+	private static final int MAX_BATCH_GET = 100;
+	private static final int MAX_BATCH_WRITE = 25;
+	private static final int MAX_BATCH_ATTEMPTS = 10;
+	private static final long SCAN_SEGMENT_BYTES = 64L * 1024L * 1024L;
+	private static final long SCAN_SEGMENTS_TIMEOUT = 300000L;
+	// items a sweep of cleared generations looks at before it lets the other background tasks run
+	private static final int SWEEP_SLICE = 1000;
+	// stale entries waiting for a background refresh, more are served stale without a refresh
+	private static final int REFRESH_QUEUE_SIZE = 1000;
+
+	// tags, every (tag, key) pair is stored as membership item, found by the sparse index on the tag
+	private static final String TAG_INDEX = "tagIndex";
+	private static final String TAG_ATTRIBUTE = "tagName";
+	private static final String TAG_MEMBER = "member";
+	private static final String TAG_KEY_PREFIX = "__tag__:";
+	// the tags an entry was put with, a membership item only counts while its entry still has the tag
+	private static final String TAG_LIST_ATTRIBUTE = "tags";
+	private static final long TAG_INDEX_TIMEOUT = 600000L;
+	// write behind buffers by config and cache name, a new instance for the same cache closes the one it replaces
+	private static final Map<String, WriteBehind> WRITE_BEHINDS = new ConcurrentHashMap<>();
+	// lease items, held by the node loading the value of a key
+	private static final String LEASE_KEY_PREFIX = "__lease__:";
 
 	private String accessKeyId;
 	private String secretAccessKey;
@@ -53,17 +121,75 @@ public class DynamoDBCache extends CacheSupport {
 	private String host;
 	private String region;
 	private long liveTimeout;
+	private HttpSettings httpSettings;
+	private String clientKey;
+	private volatile AmazonDynamoDBClient client;
+	private final AtomicBoolean rotating = new AtomicBoolean();
 
 	private String primaryKeyName = "cacheKey"; // Default fallback
+	// only what is needed to know if an entry exists
+	private String keyProjection = "#pk, #ttl, #exp";
+	private Map<String, String> keyAttributeNames = Map.of("#pk", primaryKeyName, "#ttl", "ttl", "#exp", "expires");
+
+	// composite keys (partition and sort key), disabled when there is no delimiter
+	private String keyDelimiter;
+	private String sortKey;
+	private String sortKeyName;
 
 	private Log log;
 	private CFMLEngine eng;
 
 	private String primaryKey;
 
+	private NearCache nearCache;
+	private NegativeCache negativeCache;
+	private final SingleFlight<Map<String, AttributeValue>> reads = new SingleFlight<>();
+	private ReadBatcher readBatcher;
+	private final SingleFlight<Object> loads = new SingleFlight<>();
+	private final String leaseOwner = UUID.randomUUID().toString();
+	private long leaseTimeout;
+	private long leasePollInterval;
+	private double earlyRefreshBeta;
+	private double ttlJitter;
+	// stale while revalidate, expired entries are kept that long and served while they get refreshed
+	private long staleGracePeriod;
+	private volatile Reloader reloader;
+	private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+	private ExecutorService refresher;
+
+	private WriteBehind writeBehind;
+	private String writeBehindId;
+	// sweep of the items without a ttl of cleared generations, at most one at a time
+	private Sweep sweep;
+	private TouchQueue touchQueue;
+	private long writeBehindTimeout;
+
+	private int batchParallelism;
+
+	private int scanSegments;
+	private int scanMaxSegments;
+	private boolean filterPushdown;
+	private boolean keyFilterPushdown;
+	private int decodeThreads;
+	private boolean clearByRecreate;
+	private boolean namespaces;
+	private long namespaceRefreshInterval;
+	private volatile Namespace namespace;
+	private boolean tags;
+	private volatile boolean tagIndexReady;
+	private final Object tagIndexLock = new Object();
+	private ExecutorService decoder;
+	private volatile int autoScanSegments;
+	private volatile long autoScanSegmentsExpires;
+	private ScheduledExecutorService scheduler;
+	// replaces expired clients, not the scheduler, a slow flush there must not delay the rotation
+	private ExecutorService rotator;
+	private final CacheMetrics metrics = new CacheMetrics();
+
 	@Override
 	public void init(Config config, String cacheName, Struct arguments) throws IOException {
 		init(config, arguments);
+		if (cacheName != null) replaceWriteBehind(System.identityHashCode(config) + ":" + cacheName.toLowerCase());
 	}
 
 	public void init(Struct arguments) throws IOException {
@@ -79,6 +205,13 @@ public class DynamoDBCache extends CacheSupport {
 
 		Cast caster = eng.getCastUtil();
 
+		// the log is resolved first, it is passed on to the components created below
+		String logName = caster.toString(arguments.get("log", null), "application");
+		if (!Util.isEmpty(logName, true) && config != null) {
+			logName = logName.trim();
+			this.log = config.getLog(logName);
+		}
+
 		// tableName
 		if (Util.isEmpty(tableName, true)) tableName = caster.toString(arguments.get("tableName", null), null);
 		if (Util.isEmpty(tableName, true)) tableName = caster.toString(arguments.get("table", null), null);
@@ -109,12 +242,109 @@ public class DynamoDBCache extends CacheSupport {
 		primaryKey = caster.toString(arguments.get("primaryKey", null), null);
 		if (Util.isEmpty(primaryKey, true)) primaryKey = "cacheKey";
 
+		// composite keys, the part of the key after the last delimiter is used as sort key
+		keyDelimiter = caster.toString(arguments.get("keyDelimiter", null), null);
+		if (Util.isEmpty(keyDelimiter)) keyDelimiter = null;
+		sortKey = caster.toString(arguments.get("sortKey", null), null);
+		if (Util.isEmpty(sortKey, true)) sortKey = "sortKey";
+
 		liveTimeout = caster.toLongValue(arguments.get("liveTimeout", null), 3600000L);
 
-		String logName = caster.toString(arguments.get("log", null), "application");
-		if (!Util.isEmpty(logName, true) && config != null) {
-			logName = logName.trim();
-			this.log = config.getLog(logName);
+		// HTTP connection pool
+		httpSettings = new HttpSettings(Math.max(1, caster.toIntValue(arguments.get("maxConnections", null), 50)),
+				caster.toLongValue(arguments.get("connectionAcquisitionTimeout", null), 10000L), caster.toLongValue(arguments.get("connectionTimeToLive", null), 0L),
+				caster.toLongValue(arguments.get("connectionMaxIdleTime", null), 0L), caster.toBooleanValue(arguments.get("useIdleConnectionReaper", null), true),
+				caster.toBooleanValue(arguments.get("tcpKeepAlive", null), false), caster.toLongValue(arguments.get("socketTimeout", null), 30000L),
+				caster.toLongValue(arguments.get("connectionTimeout", null), 2000L));
+		clientKey = AmazonDynamoDBClient.key(accessKeyId, secretAccessKey, host, region, httpSettings);
+		client = null;
+
+		// near cache (disabled unless a bound is set)
+		int nearCacheMaxEntries = caster.toIntValue(arguments.get("nearCacheMaxEntries", null), 0);
+		long nearCacheMaxBytes = caster.toLongValue(arguments.get("nearCacheMaxBytes", null), 0L);
+		if (nearCacheMaxEntries > 0 || nearCacheMaxBytes > 0) {
+			String policy = caster.toString(arguments.get("nearCachePolicy", null), null);
+			policy = Util.isEmpty(policy, true) ? NearCache.POLICY_LRU : policy.trim().toLowerCase();
+			if (!NearCache.POLICY_LRU.equals(policy) && !NearCache.POLICY_TINYLFU.equals(policy)) {
+				throw new IOException("nearCachePolicy [" + policy + "] is not supported, supported policies are [" + NearCache.POLICY_LRU + ", " + NearCache.POLICY_TINYLFU + "]");
+			}
+			long nearCacheTimeToLive = caster.toLongValue(arguments.get("nearCacheTimeToLive", null), 10000L);
+			nearCache = new NearCache(Math.max(nearCacheMaxEntries, 0), Math.max(nearCacheMaxBytes, 0), nearCacheTimeToLive, policy);
+		}
+		else {
+			nearCache = null;
+		}
+
+		// negative cache (disabled unless a timeout is set)
+		long negativeCacheTimeout = caster.toLongValue(arguments.get("negativeCacheTimeout", null), 0L);
+		if (negativeCacheTimeout > 0) {
+			int negativeCacheMaxEntries = caster.toIntValue(arguments.get("negativeCacheMaxEntries", null), 10000);
+			negativeCache = new NegativeCache(negativeCacheTimeout, Math.max(negativeCacheMaxEntries, 1));
+		}
+		else {
+			negativeCache = null;
+		}
+
+		// read batching (disabled unless a window is set)
+		double readBatchWindow = caster.toDoubleValue(arguments.get("readBatchWindow", null), 0D);
+		if (readBatchWindow > 0) {
+			int readBatchSize = caster.toIntValue(arguments.get("readBatchSize", null), MAX_BATCH_GET);
+			readBatcher = new ReadBatcher((long) (readBatchWindow * 1000000D), Math.min(Math.max(readBatchSize, 1), MAX_BATCH_GET), this::batchGetItems);
+		}
+		else {
+			readBatcher = null;
+		}
+
+		// number of batch requests sent at the same time by bulk operations
+		batchParallelism = Math.max(1, caster.toIntValue(arguments.get("batchParallelism", null), 4));
+
+		// parallel scan, 0 segments means picked based on the size of the table
+		scanSegments = Math.max(0, caster.toIntValue(arguments.get("scanSegments", null), 0));
+		scanMaxSegments = Math.max(1, caster.toIntValue(arguments.get("scanMaxSegments", null), 16));
+		autoScanSegmentsExpires = 0;
+		filterPushdown = caster.toBooleanValue(arguments.get("filterPushdown", null), true);
+		// key filters ignore the case, pushed down they only match keys not stored with mixed case (opt in)
+		keyFilterPushdown = caster.toBooleanValue(arguments.get("keyFilterPushdown", null), false);
+		// values of scanned entries are decoded in parallel, 0 means by the calling thread when asked for
+		decodeThreads = Math.max(0, caster.toIntValue(arguments.get("scanDecodeThreads", null), 0));
+
+		// clear drops the whole table, only for tables used by this cache alone
+		clearByRecreate = caster.toBooleanValue(arguments.get("clearByRecreate", null), false);
+
+		namespaces = caster.toBooleanValue(arguments.get("namespaces", null), false);
+		namespaceRefreshInterval = caster.toLongValue(arguments.get("namespaceRefreshInterval", null), 1000L);
+
+		// tags need an index on the table, it is only created when they are enabled
+		tags = caster.toBooleanValue(arguments.get("tags", null), false);
+
+		// getOrLoad, a node loading a value holds a lease for at most that long, the others wait for it
+		leaseTimeout = Math.max(100L, caster.toLongValue(arguments.get("leaseTimeout", null), 10000L));
+		leasePollInterval = Math.max(10L, caster.toLongValue(arguments.get("leasePollInterval", null), 100L));
+		// probabilistic early refresh of getOrLoad (XFetch), disabled by default
+		earlyRefreshBeta = Math.max(0D, caster.toDoubleValue(arguments.get("earlyRefreshBeta", null), 0D));
+		// part of the lifetime an entry may expire earlier, so entries written together do not expire together
+		ttlJitter = Math.min(1D, Math.max(0D, caster.toDoubleValue(arguments.get("ttlJitter", null), 0D)));
+		staleGracePeriod = Math.max(0L, caster.toLongValue(arguments.get("staleGracePeriod", null), 0L));
+
+		// sliding expiration, reads extend the lifetime of entries with an idle time, at most once per interval (disabled by default)
+		long touchInterval = caster.toLongValue(arguments.get("touchInterval", null), 0L);
+		if (touchInterval > 0) {
+			int touchMaxEntries = caster.toIntValue(arguments.get("touchMaxEntries", null), 10000);
+			touchQueue = new TouchQueue(touchInterval, Math.max(touchMaxEntries, 1), batchParallelism, this::touchAsync, getScheduler(), log);
+		}
+		else {
+			touchQueue = null;
+		}
+
+		// write behind (disabled by default)
+		if (caster.toBooleanValue(arguments.get("writeBehind", null), false)) {
+			int writeBehindMaxEntries = caster.toIntValue(arguments.get("writeBehindMaxEntries", null), 10000);
+			long writeBehindInterval = caster.toLongValue(arguments.get("writeBehindInterval", null), 1000L);
+			writeBehindTimeout = caster.toLongValue(arguments.get("writeBehindTimeout", null), 5000L);
+			writeBehind = new WriteBehind(Math.max(writeBehindMaxEntries, 1), Math.max(writeBehindInterval, 1L), this::writeItems, getScheduler(), log);
+		}
+		else {
+			writeBehind = null;
 		}
 
 		if (log != null) {
@@ -123,59 +353,644 @@ public class DynamoDBCache extends CacheSupport {
 
 		// Ensure table exists
 		ensureTableExists();
+		if (sortKeyName != null) {
+			keyProjection = "#pk, #sk, #ttl, #exp";
+			keyAttributeNames = Map.of("#pk", primaryKeyName, "#sk", sortKeyName, "#ttl", "ttl", "#exp", "expires"); // ttl is a reserved word
+		}
+		else {
+			keyProjection = "#pk, #ttl, #exp";
+			keyAttributeNames = Map.of("#pk", primaryKeyName, "#ttl", "ttl", "#exp", "expires"); // ttl is a reserved word
+		}
 
+		// namespace generations, clear only increases the generation (disabled by default)
+		if (namespaces) {
+			Namespace ns = new Namespace(this::getClient, tableName, storedKeyOf(Namespace.CONTROL_KEY), Math.max(namespaceRefreshInterval, 100L));
+			try {
+				ns.refresh();
+			}
+			catch (Exception e) {
+				throw handleException(e);
+			}
+			namespace = ns;
+			getScheduler().scheduleWithFixedDelay(this::refreshNamespace, ns.getRefreshInterval(), ns.getRefreshInterval(), TimeUnit.MILLISECONDS);
+		}
+		else {
+			namespace = null;
+		}
+
+		tagIndexReady = false;
+		if (tags) ensureTagIndex();
 	}
 
 	DynamoDbClient getClient() {
-		// TODO may keep a local copy?
-		return AmazonDynamoDBClient.get(accessKeyId, secretAccessKey, host, region, liveTimeout, log);
+		return getClientInstance().getDynamoDbClient();
+	}
+
+	/**
+	 * non blocking client, used for the operations that send many requests at once (batches), so they
+	 * do not need a thread per request in flight
+	 */
+	DynamoDbAsyncClient getAsyncClient() {
+		return getClientInstance().getDynamoDbAsyncClient();
+	}
+
+	/**
+	 * returns the client held by this cache, once it is expired the next one is fetched from the pool
+	 * in the background, until then the expired client is still used
+	 */
+	private AmazonDynamoDBClient getClientInstance() {
+		AmazonDynamoDBClient c = client;
+		if (c != null && !c.isExpired()) return c;
+
+		// no usable client at all, we need to wait for one
+		if (c == null || c.isClosed()) {
+			synchronized (this) {
+				c = client;
+				if (c == null || c.isClosed()) {
+					client = c = AmazonDynamoDBClient.getInstance(clientKey, accessKeyId, secretAccessKey, host, region, liveTimeout, httpSettings, log);
+				}
+			}
+			return c;
+		}
+
+		if (rotating.compareAndSet(false, true)) {
+			getRotator().execute(() -> {
+				try {
+					client = AmazonDynamoDBClient.getInstance(clientKey, accessKeyId, secretAccessKey, host, region, liveTimeout, httpSettings, log);
+				}
+				catch (Exception e) {
+					if (log != null) log.error("dynamodb-cache", "failed to replace the expired DynamoDB client", e);
+				}
+				finally {
+					rotating.set(false);
+				}
+			});
+		}
+		return c;
 	}
 
 	@Override
 	public CacheEntry getCacheEntry(String key) throws IOException {
+		long start = System.nanoTime();
+		Map<String, AttributeValue> item;
 		try {
-			GetItemRequest getRequest = GetItemRequest.builder().tableName(tableName).key(Map.of(primaryKeyName, AttributeValue.builder().s(key).build()))
-					// No projection - fetch everything since CacheEntry needs all metadata
-					.build();
+			item = lookup(key);
+			if (item != null && isStale(item) && !refreshInBackground(key, item)) item = null;
+		}
+		catch (Exception e) {
+			throw handleException(e);
+		}
+		finally {
+			metrics.get.record(start);
+		}
 
-			GetItemResponse response = getClient().getItem(getRequest);
+		if (item == null) {
+			metrics.misses.increment();
+			throw handleException(CFMLEngineFactory.getInstance().getExceptionUtil().createApplicationException("key [" + key + "] does not exist in table [" + tableName + "]"), false);
+		}
+		metrics.hits.increment();
+		return new DynamoDBCacheEntry(key, item, log);
+	}
 
-			if (!valid(response)) {
-				throw CFMLEngineFactory.getInstance().getExceptionUtil().createApplicationException("key [" + key + "] does not exist in table [" + tableName + "]");
+	@Override
+	public CacheEntry getCacheEntry(String key, CacheEntry defaultValue) {
+		long start = System.nanoTime();
+		try {
+			Map<String, AttributeValue> item = lookup(key);
+
+			// an entry in its grace period is only served while it gets refreshed
+			if (item == null || (isStale(item) && !refreshInBackground(key, item))) {
+				metrics.misses.increment();
+				return defaultValue;
 			}
 
-			return new DynamoDBCacheEntry(key, response.item(), log);
+			// Pass the entire item map, not just the value
+			metrics.hits.increment();
+			return new DynamoDBCacheEntry(key, item, log);
 
 		}
+		catch (Exception e) {
+			count(e);
+			return defaultValue;
+		}
+		finally {
+			metrics.get.record(start);
+		}
+	}
+
+	/**
+	 * returns the value for the given key, on a miss the value is loaded with the given loader and
+	 * stored. Concurrent calls for the same key on this node share one load, across nodes only the node
+	 * holding the lease of the key (a short lived item written with a conditional write) loads the
+	 * value. The other nodes serve the expired value while it is still in the table, otherwise they wait
+	 * for the value, at most the lease timeout, after that they load it themselves. A valid entry may
+	 * be refreshed shortly before it expires, see {@link #refreshEarly(Map)}. An entry in its stale
+	 * grace period is served as it is, while it is refreshed in the background with the registered
+	 * loader, or without one by the caller getting the lease.
+	 */
+	public Object getOrLoad(String key, Loader loader, Long idleTime, Long until) throws IOException {
+		if (Util.isEmpty(key, true)) {
+			throw new IOException("The cache key cannot be null or empty for DynamoDB.");
+		}
+		long start = System.nanoTime();
+		Map<String, AttributeValue> item;
+		try {
+			item = lookup(key);
+		}
+		catch (Exception e) {
+			throw handleException(e);
+		}
+		finally {
+			metrics.get.record(start);
+		}
+		try {
+			if (item != null) {
+				metrics.hits.increment();
+				boolean stale = isStale(item);
+				if (stale && refreshInBackground(key, item)) return new DynamoDBCacheEntry(key, item, log).getValue();
+				if (stale || refreshEarly(item)) {
+					// only the caller getting the lease refreshes, everybody else keeps using the current value
+					Map<String, AttributeValue> leaseKey = keyOf(LEASE_KEY_PREFIX + key);
+					String owner = leaseOwner + ":" + Thread.currentThread().getId();
+					try {
+						if (acquireLease(leaseKey, owner)) {
+							try {
+								if (log != null) log.debug("dynamodb-cache", "refreshing key [" + key + "] before it expires");
+								return store(key, loader, idleTime, until);
+							}
+							finally {
+								releaseLease(leaseKey, owner);
+							}
+						}
+					}
+					catch (Exception e) {
+						// the caller still gets the current value, a failed refresh is no miss
+						count(e);
+						if (log != null) log.error("dynamodb-cache", "failed to refresh key [" + key + "], serving the current value", e);
+					}
+				}
+				return new DynamoDBCacheEntry(key, item, log).getValue();
+			}
+			metrics.misses.increment();
+			return loads.execute(key, () -> load(key, loader, idleTime, until));
+		}
 		catch (Exception e) {
 			throw handleException(e);
 		}
 	}
 
-	@Override
-	public CacheEntry getCacheEntry(String key, CacheEntry defaultValue) {
+	private Object load(String key, Loader loader, Long idleTime, Long until) throws Exception {
+		String owner = leaseOwner + ":" + Thread.currentThread().getId();
+		Map<String, AttributeValue> leaseKey = keyOf(LEASE_KEY_PREFIX + key);
+		long deadline = System.currentTimeMillis() + leaseTimeout;
+		boolean first = true;
+		while (true) {
+			// read with strong consistency, the value may just have been written by an other node
+			Map<String, AttributeValue> item = getClient().getItem(GetItemRequest.builder().tableName(tableName).key(keyOf(key)).consistentRead(true).build()).item();
+			if (valid(item)) return new DynamoDBCacheEntry(key, item, log).getValue();
+
+			if (acquireLease(leaseKey, owner)) {
+				try {
+					return store(key, loader, idleTime, until);
+				}
+				finally {
+					releaseLease(leaseKey, owner);
+				}
+			}
+
+			// an other node loads the value, serve the expired one in the meantime if it is still there
+			if (first && item != null && item.containsKey("value")) {
+				if (log != null) log.debug("dynamodb-cache", "serving expired value for key [" + key + "] while an other node loads it");
+				return new DynamoDBCacheEntry(key, item, log).getValue();
+			}
+			first = false;
+
+			if (System.currentTimeMillis() >= deadline) {
+				if (log != null) log.warn("dynamodb-cache", "lease for key [" + key + "] was not released within " + leaseTimeout + "ms, loading the value without it");
+				return store(key, loader, idleTime, until);
+			}
+			Thread.sleep(leasePollInterval);
+		}
+	}
+
+	/**
+	 * loads the value and stores it together with the time that took
+	 */
+	private Object store(String key, Loader loader, Long idleTime, Long until) throws Exception {
+		long start = System.nanoTime();
+		Object value = loader.load();
+		write(key, value, idleTime, until, Math.max(1L, (System.nanoTime() - start) / 1000000L));
+		return value;
+	}
+
+	/**
+	 * registers the loader used to refresh entries in their stale grace period in the background, null
+	 * removes it. Without a loader, entries are not served once they expired.
+	 */
+	public void setLoader(Reloader reloader) {
+		this.reloader = reloader;
+	}
+
+	/**
+	 * true if the item has expired but is still in its stale grace period
+	 */
+	private boolean isStale(Map<String, AttributeValue> item) {
+		if (item == null || staleGracePeriod <= 0) return false;
+		AttributeValue expires = item.get("expires");
+		if (expires == null) return false;
+		long now = System.currentTimeMillis();
+		if (now < Long.parseLong(expires.n())) return false;
+		AttributeValue ttl = item.get("ttl");
+		return ttl == null || now / 1000 < Long.parseLong(ttl.n());
+	}
+
+	/**
+	 * refreshes a stale entry in the background with the registered loader, one refresh per key at a
+	 * time on this node and, with the lease, in the cluster. Returns false if there is no registered
+	 * loader.
+	 */
+	private boolean refreshInBackground(String key, Map<String, AttributeValue> item) {
+		Reloader r = reloader;
+		if (r == null) return false;
+		if (!refreshing.add(key)) return true;
 		try {
-			GetItemRequest getRequest = GetItemRequest.builder().tableName(tableName).key(Map.of(primaryKeyName, AttributeValue.builder().s(key).build()))
+			Loader loader = r.prepare(key);
+			Long idleTime = longOf(item, "idle");
+			Long until = longOf(item, "until");
+			getRefresher().execute(() -> {
+				Map<String, AttributeValue> leaseKey = keyOf(LEASE_KEY_PREFIX + key);
+				String owner = leaseOwner + ":" + Thread.currentThread().getId();
+				try {
+					if (acquireLease(leaseKey, owner)) {
+						try {
+							if (log != null) log.debug("dynamodb-cache", "refreshing stale key [" + key + "]");
+							store(key, loader, idleTime, until);
+						}
+						finally {
+							releaseLease(leaseKey, owner);
+						}
+					}
+				}
+				catch (Exception e) {
+					if (log != null) log.error("dynamodb-cache", "failed to refresh the stale key [" + key + "]", e);
+				}
+				finally {
+					refreshing.remove(key);
+				}
+			});
+		}
+		catch (RejectedExecutionException e) {
+			refreshing.remove(key);
+			if (log != null) log.debug("dynamodb-cache", "skipped the refresh of the stale key [" + key + "], too many refreshes are pending");
+		}
+		catch (Exception e) {
+			refreshing.remove(key);
+			if (log != null) log.error("dynamodb-cache", "failed to refresh the stale key [" + key + "]", e);
+		}
+		return true;
+	}
+
+	private static Long longOf(Map<String, AttributeValue> item, String name) {
+		AttributeValue attr = item.get(name);
+		return attr == null || attr.n() == null ? null : Long.valueOf(attr.n());
+	}
+
+	/**
+	 * XFetch, decides to refresh a valid entry before it expires with a probability rising the closer it
+	 * gets to its expiration and the longer it took to compute it. So a hot entry is usually refreshed
+	 * once by a single request before it expires, instead of all requests missing at the same time.
+	 */
+	private boolean refreshEarly(Map<String, AttributeValue> item) {
+		if (earlyRefreshBeta <= 0) return false;
+		AttributeValue computeTime = item.get("computeTime");
+		if (computeTime == null) return false;
+
+		long expires = Long.MAX_VALUE;
+		AttributeValue updatedTime = item.get("updatedTime");
+		AttributeValue until = item.get("until");
+		if (updatedTime != null && until != null) expires = Long.parseLong(updatedTime.n()) + Long.parseLong(until.n());
+		AttributeValue ttl = item.get("ttl");
+		if (ttl != null) expires = Math.min(expires, Long.parseLong(ttl.n()) * 1000L);
+		if (expires == Long.MAX_VALUE) return false;
+
+		// -log(random) is 0 or more, rarely a multiple of the compute time
+		double gap = Long.parseLong(computeTime.n()) * earlyRefreshBeta * -Math.log(1D - ThreadLocalRandom.current().nextDouble());
+		return System.currentTimeMillis() + gap >= expires;
+	}
+
+	/**
+	 * writes the lease item unless there is one that is not expired yet, returns true if the lease is
+	 * ours
+	 */
+	private boolean acquireLease(Map<String, AttributeValue> leaseKey, String owner) {
+		long now = System.currentTimeMillis();
+		Map<String, AttributeValue> item = new HashMap<>(leaseKey);
+		item.put("owner", AttributeValue.builder().s(owner).build());
+		item.put("leaseExpires", AttributeValue.builder().n(String.valueOf(now + leaseTimeout)).build());
+		// removed by DynamoDB when the lease is not released
+		item.put("ttl", AttributeValue.builder().n(String.valueOf((now + leaseTimeout) / 1000 + 60)).build());
+		try {
+			getClient().putItem(PutItemRequest.builder().tableName(tableName).item(item).conditionExpression("attribute_not_exists(#pk) OR #expires < :now")
+					.expressionAttributeNames(Map.of("#pk", primaryKeyName, "#expires", "leaseExpires"))
+					.expressionAttributeValues(Map.of(":now", AttributeValue.builder().n(String.valueOf(now)).build())).build());
+			return true;
+		}
+		catch (ConditionalCheckFailedException e) {
+			return false;
+		}
+	}
+
+	private void releaseLease(Map<String, AttributeValue> leaseKey, String owner) {
+		try {
+			getClient().deleteItem(DeleteItemRequest.builder().tableName(tableName).key(leaseKey).conditionExpression("#owner = :owner")
+					.expressionAttributeNames(Map.of("#owner", "owner")).expressionAttributeValues(Map.of(":owner", AttributeValue.builder().s(owner).build())).build());
+		}
+		catch (ConditionalCheckFailedException e) {
+			// the lease expired and was taken over by an other node
+		}
+		catch (Exception e) {
+			// expires anyway
+			if (log != null) log.error("dynamodb-cache", e);
+		}
+	}
+
+	/**
+	 * returns the valid item for the given key or null if there is none, served from the near cache
+	 * when possible
+	 */
+	private Map<String, AttributeValue> getItem(String key) throws PageException {
+		Map<String, AttributeValue> item = lookup(key);
+		return item == null || isStale(item) ? null : item;
+	}
+
+	/**
+	 * same as {@link #getItem(String)}, but also returns an item in its stale grace period
+	 */
+	private Map<String, AttributeValue> lookup(String key) throws PageException {
+		// a pending write is the most recent state of the entry
+		WriteBehind wb = writeBehind;
+		if (wb != null) {
+			Map<String, AttributeValue> item = wb.get(key);
+			if (item != null) return valid(item) || isStale(item) ? item : null;
+		}
+
+		NearCache nc = nearCache;
+		if (nc != null) {
+			Map<String, AttributeValue> item = nc.get(key);
+			if (item != null) {
+				touch(key, item);
+				return item;
+			}
+		}
+		NegativeCache neg = negativeCache;
+		if (neg != null && neg.contains(key)) return null;
+
+		// versions are taken before the table is asked, so a local modification in between is detected
+		long version = nc != null ? nc.version(key) : 0;
+		long negVersion = neg != null ? neg.version(key) : 0;
+
+		// concurrent reads of the same key share one request
+		Map<String, AttributeValue> item = reads.execute(key, () -> fetchItem(key, nc, version, neg, negVersion));
+		if (item != null && !isStale(item)) touch(key, item);
+		return item;
+	}
+
+	/**
+	 * queues the read entry to extend its lifetime, if it expires by its idle time
+	 */
+	private void touch(String key, Map<String, AttributeValue> item) {
+		TouchQueue tq = touchQueue;
+		if (tq == null) return;
+		// with until, the idle time does not define the lifetime
+		AttributeValue idle = item.get("idle");
+		if (idle == null || idle.n() == null || item.containsKey("until")) return;
+		tq.touch(key, Long.parseLong(idle.n()), item.containsKey("expires"));
+	}
+
+	/**
+	 * sets the ttl of an entry to now plus its idle time and records the hit, without rewriting the
+	 * value. The condition makes sure a removed entry is not brought back and a replaced one is not
+	 * changed.
+	 */
+	private CompletableFuture<Void> touchAsync(String key, long idle, boolean expires, long now) {
+		StringBuilder updateExpr = new StringBuilder("SET #ttl = :ttl, #lastHit = :now");
+		Map<String, String> attrNames = new HashMap<>();
+		attrNames.put("#pk", primaryKeyName);
+		attrNames.put("#ttl", "ttl");
+		attrNames.put("#lastHit", "lastHit");
+		attrNames.put("#idle", "idle");
+
+		Map<String, AttributeValue> attrValues = new HashMap<>();
+		attrValues.put(":ttl", AttributeValue.builder().n(String.valueOf(toTTL(now + idle))).build());
+		attrValues.put(":now", AttributeValue.builder().n(String.valueOf(now)).build());
+		attrValues.put(":idle", AttributeValue.builder().n(String.valueOf(idle)).build());
+		if (expires) {
+			updateExpr.append(", #expires = :expires");
+			attrNames.put("#expires", "expires");
+			attrValues.put(":expires", AttributeValue.builder().n(String.valueOf(now + idle)).build());
+		}
+
+		UpdateItemRequest request = UpdateItemRequest.builder().tableName(tableName).key(keyOf(key)).updateExpression(updateExpr.toString())
+				.conditionExpression("attribute_exists(#pk) AND #idle = :idle").expressionAttributeNames(attrNames).expressionAttributeValues(attrValues).build();
+		return getAsyncClient().updateItem(request).thenApply(r -> null);
+	}
+
+	private Map<String, AttributeValue> fetchItem(String key, NearCache nc, long version, NegativeCache neg, long negVersion) throws PageException {
+		Map<String, AttributeValue> item;
+		ReadBatcher rb = readBatcher;
+		if (rb != null) {
+			item = rb.get(key);
+		}
+		else {
+			GetItemRequest getRequest = GetItemRequest.builder().tableName(tableName).key(keyOf(key))
 					// No projection - fetch everything since CacheEntry needs all metadata
 					.build();
 
-			GetItemResponse response = getClient().getItem(getRequest);
+			item = getClient().getItem(getRequest).item();
+		}
 
-			if (!valid(response)) {
-				return defaultValue;
+		if (!valid(item)) {
+			// not remembered as miss and not kept in the near cache
+			if (isStale(item)) return item;
+			if (neg != null) neg.put(key, negVersion);
+			return null;
+		}
+
+		if (nc != null) nc.put(key, item, version);
+		return item;
+	}
+
+	/**
+	 * sends the given write requests with BatchWriteItem requests of up to 25 items, up to
+	 * batchParallelism of them in flight at the same time
+	 */
+	private void batchWrite(List<WriteRequest> requests) throws PageException {
+		long start = System.nanoTime();
+		List<Supplier<CompletableFuture<Void>>> tasks = new ArrayList<>();
+		for (int i = 0; i < requests.size(); i += MAX_BATCH_WRITE) {
+			List<WriteRequest> chunk = requests.subList(i, Math.min(i + MAX_BATCH_WRITE, requests.size()));
+			tasks.add(() -> batchWriteItemsAsync(Map.of(tableName, chunk), 0));
+		}
+		try {
+			AsyncUtil.await(AsyncUtil.runAll(tasks, batchParallelism));
+		}
+		finally {
+			metrics.batch.record(start);
+		}
+	}
+
+	/**
+	 * sends up to 25 write requests with a single BatchWriteItem request, items the table could not
+	 * process are retried with backoff
+	 */
+	private CompletableFuture<Void> batchWriteItemsAsync(Map<String, List<WriteRequest>> requestItems, int attempt) {
+		return getAsyncClient().batchWriteItem(BatchWriteItemRequest.builder().requestItems(requestItems).build()).thenCompose(response -> {
+			Map<String, List<WriteRequest>> unprocessed = response.unprocessedItems();
+			if (unprocessed == null || unprocessed.isEmpty()) return CompletableFuture.completedFuture(null);
+			return retryAfterBackoff(attempt + 1, "BatchWriteItem", () -> batchWriteItemsAsync(unprocessed, attempt + 1));
+		});
+	}
+
+	/**
+	 * loads up to 100 items with a single BatchGetItem request, keys the table could not process are
+	 * retried with backoff. Keys without an item are not part of the result, the items are not checked
+	 * for validity.
+	 */
+	private Map<String, Map<String, AttributeValue>> batchGetItems(List<String> keys) throws PageException {
+		return AsyncUtil.await(batchGetItemsAsync(keys));
+	}
+
+	private CompletableFuture<Map<String, Map<String, AttributeValue>>> batchGetItemsAsync(List<String> keys) {
+		return batchGetItemsAsync(keys, null);
+	}
+
+	/**
+	 * like {@link #batchGetItemsAsync(List)}, the attributes read can be limited with a projection (that
+	 * has to contain the key attributes)
+	 */
+	private CompletableFuture<Map<String, Map<String, AttributeValue>>> batchGetItemsAsync(List<String> keys, Consumer<KeysAndAttributes.Builder> projection) {
+		List<Map<String, AttributeValue>> requestKeys = new ArrayList<>(keys.size());
+		// the items are mapped back by the stored key requested, the namespace may change in the meantime
+		Map<String, String> requested = new HashMap<>();
+		for (String key: keys) {
+			Map<String, AttributeValue> requestKey = keyOf(key);
+			requestKeys.add(requestKey);
+			requested.put(storedKey(requestKey), key);
+		}
+		Map<String, Map<String, AttributeValue>> result = new ConcurrentHashMap<>();
+		KeysAndAttributes.Builder builder = KeysAndAttributes.builder().keys(requestKeys);
+		if (projection != null) projection.accept(builder);
+		return batchGetItemsAsync(Map.of(tableName, builder.build()), requested, result, 0).thenApply(v -> result);
+	}
+
+	private CompletableFuture<Void> batchGetItemsAsync(Map<String, KeysAndAttributes> requestItems, Map<String, String> requested, Map<String, Map<String, AttributeValue>> result,
+			int attempt) {
+		return getAsyncClient().batchGetItem(BatchGetItemRequest.builder().requestItems(requestItems).build()).thenCompose(response -> {
+			List<Map<String, AttributeValue>> items = response.responses().get(tableName);
+			if (items != null) {
+				for (Map<String, AttributeValue> item: items) {
+					String stored = storedKey(item);
+					String key = stored == null ? null : requested.get(stored);
+					if (key != null) result.put(key, item);
+				}
 			}
 
-			// Pass the entire item map, not just the value
-			return new DynamoDBCacheEntry(key, response.item(), log);
+			Map<String, KeysAndAttributes> unprocessed = response.unprocessedKeys();
+			if (unprocessed == null || unprocessed.isEmpty()) return CompletableFuture.completedFuture(null);
+			return retryAfterBackoff(attempt + 1, "BatchGetItem", () -> batchGetItemsAsync(unprocessed, requested, result, attempt + 1));
+		});
+	}
+
+	/**
+	 * returns the valid entries for the given keys, keys without a valid entry are not part of the
+	 * result. Keys not served by the near cache are loaded with BatchGetItem requests of up to 100 keys,
+	 * sent in parallel.
+	 */
+	public List<CacheEntry> getAll(Collection<String> keys) throws IOException {
+		long start = System.nanoTime();
+		try {
+			NearCache nc = nearCache;
+			NegativeCache neg = negativeCache;
+			List<CacheEntry> result = new ArrayList<>(keys.size());
+			List<String> missing = new ArrayList<>();
+			Map<String, long[]> versions = new HashMap<>();
+
+			WriteBehind wb = writeBehind;
+			Set<String> unique = new LinkedHashSet<>(keys);
+			for (String key: unique) {
+				if (wb != null) {
+					Map<String, AttributeValue> item = wb.get(key);
+					if (item != null) {
+						if (valid(item)) result.add(new DynamoDBCacheEntry(key, item, log));
+						continue;
+					}
+				}
+				if (nc != null) {
+					Map<String, AttributeValue> item = nc.get(key);
+					if (item != null) {
+						touch(key, item);
+						result.add(new DynamoDBCacheEntry(key, item, log));
+						continue;
+					}
+				}
+				if (neg != null && neg.contains(key)) continue;
+				versions.put(key, new long[] { nc != null ? nc.version(key) : 0, neg != null ? neg.version(key) : 0 });
+				missing.add(key);
+			}
+			if (missing.isEmpty()) {
+				metrics.hits.add(result.size());
+				metrics.misses.add(unique.size() - result.size());
+				return result;
+			}
 
+			// load in chunks of 100, sent in parallel when there is more than one
+			List<List<String>> chunks = new ArrayList<>();
+			for (int i = 0; i < missing.size(); i += MAX_BATCH_GET) {
+				chunks.add(missing.subList(i, Math.min(i + MAX_BATCH_GET, missing.size())));
+			}
+			List<Supplier<CompletableFuture<Map<String, Map<String, AttributeValue>>>>> tasks = new ArrayList<>(chunks.size());
+			for (List<String> chunk: chunks) {
+				tasks.add(() -> batchGetItemsAsync(chunk));
+			}
+			Map<String, Map<String, AttributeValue>> items = new HashMap<>();
+			for (Map<String, Map<String, AttributeValue>> chunkItems: AsyncUtil.await(AsyncUtil.runAll(tasks, batchParallelism))) {
+				items.putAll(chunkItems);
+			}
+
+			// entries are created on the calling thread, so values are decoded with its classloader
+			for (String key: missing) {
+				Map<String, AttributeValue> item = items.get(key);
+				long[] v = versions.get(key);
+				if (!valid(item)) {
+					if (neg != null) neg.put(key, v[1]);
+					continue;
+				}
+				if (nc != null) nc.put(key, item, v[0]);
+				touch(key, item);
+				result.add(new DynamoDBCacheEntry(key, item, log));
+			}
+			metrics.hits.add(result.size());
+			metrics.misses.add(unique.size() - result.size());
+			return result;
 		}
 		catch (Exception e) {
-			return defaultValue;
+			throw handleException(e);
+		}
+		finally {
+			metrics.batch.record(start);
 		}
 	}
 
 	@Override
 	public void put(final String key, Object value, Long idleTime, Long until) throws IOException {
+		write(key, value, idleTime, until, null);
+	}
+
+	/**
+	 * stores the entry, with the time it took to compute the value (in milliseconds, can be null), used
+	 * for the early refresh of getOrLoad
+	 */
+	private void write(final String key, Object value, Long idleTime, Long until, Long computeTime) throws IOException {
 		// ADD THIS VALIDATION
 		if (Util.isEmpty(key, true)) {
 			throw new IOException("The cache key cannot be null or empty for DynamoDB.");
@@ -185,8 +1000,17 @@ public class DynamoDBCache extends CacheSupport {
 			log.debug("dynamodb-cache", "put with key:" + key);
 		}
 
+		long start = System.nanoTime();
 		try {
 			long nowMillis = System.currentTimeMillis();
+			metrics.puts.increment();
+
+			WriteBehind wb = writeBehind;
+			if (wb != null) {
+				if (wb.offer(key, toItem(key, value, nowMillis, idleTime, until, computeTime), writeBehindTimeout)) return;
+				// the buffer stayed full, so we write directly
+				wb.discard(key);
+			}
 
 			// Build update expressions
 			StringBuilder updateExpr = new StringBuilder("SET ");
@@ -208,7 +1032,13 @@ public class DynamoDBCache extends CacheSupport {
 			if (expirationTime != null) {
 				updateExpr.append(", #ttl = :ttl");
 				attrNames.put("#ttl", "ttl"); // "ttl" is a reserved word
-				attrValues.put(":ttl", AttributeValue.builder().n(String.valueOf(expirationTime)).build());
+				attrValues.put(":ttl", AttributeValue.builder().n(String.valueOf(toTTL(expirationTime))).build());
+			}
+			// with a grace period, the item outlives its expiration
+			if (expirationTime != null && staleGracePeriod > 0) {
+				updateExpr.append(", #expires = :expires");
+				attrNames.put("#expires", "expires");
+				attrValues.put(":expires", AttributeValue.builder().n(String.valueOf(expirationTime)).build());
 			}
 
 			// idle
@@ -223,10 +1053,20 @@ public class DynamoDBCache extends CacheSupport {
 				attrNames.put("#until", "until");
 				attrValues.put(":until", AttributeValue.builder().n(String.valueOf(until)).build());
 			}
+			// compute time, an entry without one is not refreshed early
+			if (computeTime != null) {
+				updateExpr.append(", #computeTime = :computeTime");
+				attrNames.put("#computeTime", "computeTime");
+				attrValues.put(":computeTime", AttributeValue.builder().n(String.valueOf(computeTime)).build());
+			}
+			else {
+				updateExpr.append(" REMOVE #computeTime");
+				attrNames.put("#computeTime", "computeTime");
+			}
 
 			UpdateItemRequest updateRequest = UpdateItemRequest.builder().tableName(tableName)
 
-					.key(Map.of(this.primaryKeyName, AttributeValue.builder().s(key).build())).
+					.key(keyOf(key)).
 
 					updateExpression(updateExpr.toString()).expressionAttributeNames(attrNames)
 
@@ -238,19 +1078,279 @@ public class DynamoDBCache extends CacheSupport {
 		catch (Exception e) {
 			throw handleException(e);
 		}
+		finally {
+			metrics.put.record(start);
+			invalidate(key);
+		}
+	}
+
+	/**
+	 * stores all given entries with BatchWriteItem requests of up to 25 items, sent in parallel. Unlike
+	 * put, an existing item is replaced as a whole, so its createdTime is reset.
+	 */
+	public void putAll(Map<String, Object> entries, Long idleTime, Long until) throws IOException {
+		if (entries.isEmpty()) return;
+
+		try {
+			long nowMillis = System.currentTimeMillis();
+			List<WriteRequest> requests = new ArrayList<>(entries.size());
+			for (Map.Entry<String, Object> e: entries.entrySet()) {
+				if (Util.isEmpty(e.getKey(), true)) {
+					throw new IOException("The cache key cannot be null or empty for DynamoDB.");
+				}
+				requests.add(WriteRequest.builder().putRequest(PutRequest.builder().item(toItem(e.getKey(), e.getValue(), nowMillis, idleTime, until, null)).build()).build());
+			}
+
+			if (log != null) {
+				log.debug("dynamodb-cache", "putAll with " + requests.size() + " entries");
+			}
+			metrics.puts.add(requests.size());
+			WriteBehind wb = writeBehind;
+			if (wb != null) {
+				for (String key: entries.keySet()) {
+					wb.discard(key);
+				}
+			}
+			batchWrite(requests);
+		}
+		catch (Exception e) {
+			throw handleException(e);
+		}
+		finally {
+			for (String key: entries.keySet()) {
+				invalidate(key);
+			}
+		}
+	}
+
+	/**
+	 * stores the entry and makes it a member of the given tags, so it can be removed with
+	 * {@link #removeByTag(String)}. The entry and one membership item per tag are written together with
+	 * BatchWriteItem (bypassing write behind), like with putAll an existing item is replaced as a whole.
+	 * The entry keeps the list of its tags. The membership items expire with the entry, they are not
+	 * removed when the entry is removed or overwritten without the tag, {@link #removeByTag(String)}
+	 * skips such entries.
+	 */
+	public void put(String key, Object value, Long idleTime, Long until, Collection<String> tags) throws IOException {
+		if (tags == null || tags.isEmpty()) {
+			put(key, value, idleTime, until);
+			return;
+		}
+		if (Util.isEmpty(key, true)) {
+			throw new IOException("The cache key cannot be null or empty for DynamoDB.");
+		}
+
+		if (log != null) {
+			log.debug("dynamodb-cache", "put with key:" + key + " and tags:" + tags);
+		}
+
+		try {
+			checkTagIndex();
+			Set<String> names = new LinkedHashSet<>();
+			for (String tag: tags) {
+				if (!Util.isEmpty(tag, true)) names.add(tag);
+			}
+			Map<String, AttributeValue> item = toItem(key, value, System.currentTimeMillis(), idleTime, until, null);
+			if (!names.isEmpty()) item.put(TAG_LIST_ATTRIBUTE, AttributeValue.builder().ss(names).build());
+			List<WriteRequest> requests = new ArrayList<>(names.size() + 1);
+			requests.add(WriteRequest.builder().putRequest(PutRequest.builder().item(item).build()).build());
+			for (String tag: names) {
+				requests.add(WriteRequest.builder().putRequest(PutRequest.builder().item(toTagItem(tag, key, item.get("ttl"))).build()).build());
+			}
+
+			metrics.puts.increment();
+			WriteBehind wb = writeBehind;
+			if (wb != null) wb.discard(key);
+			batchWrite(requests);
+		}
+		catch (Exception e) {
+			throw handleException(e);
+		}
+		finally {
+			invalidate(key);
+		}
+	}
+
+	/**
+	 * removes all entries stored with the given tag, see {@link #put(String, Object, Long, Long, Collection)}.
+	 * The members are read with a Query on the tag index, so the cost depends on the number of members
+	 * and not on the size of the table. The index is eventually consistent, an entry tagged just now may
+	 * not be found yet. Members put again without the tag since are kept. Returns the number of members
+	 * removed.
+	 */
+	public int removeByTag(String tag) throws IOException {
+		try {
+			checkTagIndex();
+			Namespace ns = namespace;
+			QueryRequest request = QueryRequest.builder().tableName(tableName).indexName(TAG_INDEX).keyConditionExpression("#tag = :tag")
+					.expressionAttributeNames(Map.of("#tag", TAG_ATTRIBUTE))
+					.expressionAttributeValues(Map.of(":tag", AttributeValue.builder().s(ns == null ? tag : ns.prefix() + tag).build())).build();
+
+			Set<String> keys = new LinkedHashSet<>();
+			List<WriteRequest> memberships = new ArrayList<>();
+			for (Map<String, AttributeValue> item: getClient().queryPaginator(request).items()) {
+				AttributeValue member = item.get(TAG_MEMBER);
+				if (member != null && member.s() != null) keys.add(member.s());
+				memberships.add(WriteRequest.builder().deleteRequest(DeleteRequest.builder().key(storedKeyOf(storedKey(item))).build()).build());
+			}
+
+			int count = removeAll(currentMembers(new ArrayList<>(keys), tag));
+			batchWrite(memberships);
+			return count;
+		}
+		catch (Exception e) {
+			throw handleException(e);
+		}
+	}
+
+	/**
+	 * returns the keys that are still stored with the tag, read with BatchGetItem requests of up to 100
+	 * keys. A write pending in write behind is newer and has no tags, tagged puts bypass write behind.
+	 */
+	private List<String> currentMembers(List<String> keys, String tag) throws PageException {
+		String projection = keyProjection + ", #tags";
+		Map<String, String> names = new HashMap<>(keyAttributeNames);
+		names.put("#tags", TAG_LIST_ATTRIBUTE);
+		List<Supplier<CompletableFuture<Map<String, Map<String, AttributeValue>>>>> tasks = new ArrayList<>();
+		for (int i = 0; i < keys.size(); i += MAX_BATCH_GET) {
+			List<String> chunk = keys.subList(i, Math.min(i + MAX_BATCH_GET, keys.size()));
+			tasks.add(() -> batchGetItemsAsync(chunk, b -> b.projectionExpression(projection).expressionAttributeNames(names)));
+		}
+		WriteBehind wb = writeBehind;
+		List<String> members = new ArrayList<>();
+		for (Map<String, Map<String, AttributeValue>> items: AsyncUtil.await(AsyncUtil.runAll(tasks, batchParallelism))) {
+			for (Map.Entry<String, Map<String, AttributeValue>> e: items.entrySet()) {
+				if (wb != null && wb.get(e.getKey()) != null) continue;
+				AttributeValue list = e.getValue().get(TAG_LIST_ATTRIBUTE);
+				if (list != null && list.hasSs() && list.ss().contains(tag)) members.add(e.getKey());
+			}
+		}
+		return members;
+	}
+
+	/**
+	 * the membership item of a key in a tag, the stored key holds the tag and the key, so it is unique
+	 * per pair, while the tag attribute is the key of the index
+	 */
+	private Map<String, AttributeValue> toTagItem(String tag, String key, AttributeValue ttl) {
+		Namespace ns = namespace;
+		String prefix = ns == null ? "" : ns.prefix();
+		Map<String, AttributeValue> item = new HashMap<>(storedKeyOf(prefix + TAG_KEY_PREFIX + tag.length() + ":" + tag + ":" + key));
+		item.put(TAG_ATTRIBUTE, AttributeValue.builder().s(prefix + tag).build());
+		item.put(TAG_MEMBER, AttributeValue.builder().s(key).build());
+		if (ttl != null) item.put("ttl", ttl);
+		return item;
+	}
+
+	/**
+	 * tagged puts and removeByTag need the tag index, they never wait for it
+	 */
+	private void checkTagIndex() throws IOException {
+		if (tagIndexReady) return;
+		if (!tags) throw new IOException("tags are not enabled for the cache on table [" + tableName + "], enable the setting [tags] to use them");
+		throw new IOException("index [" + TAG_INDEX + "] of table [" + tableName + "] is not active");
+	}
+
+	/**
+	 * with tags enabled, new tables are created with the tag index, for an existing table without it,
+	 * the index is added at init, which waits until the index is active
+	 */
+	private void ensureTagIndex() throws IOException {
+		if (tagIndexReady) return;
+		synchronized (tagIndexLock) {
+			if (tagIndexReady) return;
+			DynamoDbClient client = getClient();
+			DescribeTableRequest describeRequest = DescribeTableRequest.builder().tableName(tableName).build();
+			long timeout = System.currentTimeMillis() + TAG_INDEX_TIMEOUT;
+			boolean created = false;
+			while (true) {
+				String status = null;
+				TableDescription table = client.describeTable(describeRequest).table();
+				if (table.hasGlobalSecondaryIndexes()) {
+					for (GlobalSecondaryIndexDescription gsi: table.globalSecondaryIndexes()) {
+						if (TAG_INDEX.equals(gsi.indexName())) status = gsi.indexStatusAsString();
+					}
+				}
+				if ("ACTIVE".equals(status)) break;
+
+				if (status == null && !created) {
+					if (log != null) log.info("dynamodb-cache", "Table '" + tableName + "' has no index [" + TAG_INDEX + "], creating it...");
+					client.updateTable(UpdateTableRequest.builder().tableName(tableName).attributeDefinitions(tagIndexAttribute())
+							.globalSecondaryIndexUpdates(GlobalSecondaryIndexUpdate.builder().create(CreateGlobalSecondaryIndexAction.builder().indexName(TAG_INDEX)
+									.keySchema(tagIndexKey()).projection(tagIndexProjection()).build()).build())
+							.build());
+					created = true;
+				}
+				if (System.currentTimeMillis() > timeout) {
+					throw new IOException("index [" + TAG_INDEX + "] of table [" + tableName + "] is not active after " + (TAG_INDEX_TIMEOUT / 1000) + " seconds");
+				}
+				try {
+					Thread.sleep(1000);
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException("interrupted while waiting for the index [" + TAG_INDEX + "] of table [" + tableName + "]");
+				}
+			}
+			tagIndexReady = true;
+		}
+	}
+
+	private static AttributeDefinition tagIndexAttribute() {
+		return AttributeDefinition.builder().attributeName(TAG_ATTRIBUTE).attributeType(ScalarAttributeType.S).build();
+	}
+
+	private static KeySchemaElement tagIndexKey() {
+		return KeySchemaElement.builder().attributeName(TAG_ATTRIBUTE).keyType(KeyType.HASH).build();
+	}
+
+	private static Projection tagIndexProjection() {
+		return Projection.builder().projectionType(ProjectionType.INCLUDE).nonKeyAttributes(TAG_MEMBER).build();
 	}
 
 	@Override
 	public boolean contains(String key) throws IOException {
+		long start = System.nanoTime();
+		try {
+			boolean found = exists(key);
+			if (found) metrics.hits.increment();
+			else metrics.misses.increment();
+			return found;
+		}
+		finally {
+			metrics.contains.record(start);
+		}
+	}
+
+	private boolean exists(String key) throws IOException {
 		try {
-			GetItemRequest getRequest = GetItemRequest.builder().tableName(tableName).key(Map.of(primaryKeyName, AttributeValue.builder().s(key).build()))
-					.projectionExpression("cacheKey, #ttl") // Fetch key and TTL
-					.expressionAttributeNames(TTL_ATTR_NAMES) // ttl is a reserved word
+			WriteBehind wb = writeBehind;
+			if (wb != null) {
+				Map<String, AttributeValue> item = wb.get(key);
+				if (item != null) return valid(item);
+			}
+
+			NearCache nc = nearCache;
+			if (nc != null && nc.get(key) != null) return true;
+			NegativeCache neg = negativeCache;
+			long negVersion = 0;
+			if (neg != null) {
+				if (neg.contains(key)) return false;
+				negVersion = neg.version(key);
+			}
+
+			GetItemRequest getRequest = GetItemRequest.builder().tableName(tableName).key(keyOf(key))
+					.projectionExpression(keyProjection) // Fetch key and TTL
+					.expressionAttributeNames(keyAttributeNames)
 					.build();
 
 			GetItemResponse response = getClient().getItem(getRequest);
 
-			return valid(response);
+			if (!valid(response)) {
+				if (neg != null) neg.put(key, negVersion);
+				return false;
+			}
+			return true;
 		}
 		catch (Exception e) {
 			throw handleException(e);
@@ -259,9 +1359,18 @@ public class DynamoDBCache extends CacheSupport {
 
 	@Override
 	public boolean remove(String key) throws IOException {
+		long start = System.nanoTime();
 		try {
+			metrics.removes.increment();
+			boolean pending = false;
+			WriteBehind wb = writeBehind;
+			if (wb != null) {
+				pending = valid(wb.get(key));
+				wb.discard(key);
+			}
+
 			// Create the delete request
-			DeleteItemRequest deleteRequest = DeleteItemRequest.builder().tableName(tableName).key(Map.of(this.primaryKeyName, AttributeValue.builder().s(key).build()))
+			DeleteItemRequest deleteRequest = DeleteItemRequest.builder().tableName(tableName).key(keyOf(key))
 					.returnValues(ReturnValue.ALL_OLD) // Returns old item if it existed
 					.build();
 
@@ -270,32 +1379,56 @@ public class DynamoDBCache extends CacheSupport {
 			// Check if item existed AND was not expired
 			Map<String, AttributeValue> oldItem = response.attributes();
 			if (oldItem == null || oldItem.isEmpty()) {
-				return false; // Item didn't exist
+				return pending; // Item didn't exist
 			}
 
 			// Item existed, but was it valid (not expired)?
-			return valid(oldItem);
+			return pending || valid(oldItem);
 
 		}
 		catch (Exception e) {
 			throw handleException(e);
 		}
+		finally {
+			metrics.remove.record(start);
+			invalidate(key);
+		}
 	}
 
 	@Override
 	public int remove(CacheKeyFilter filter) throws IOException {
-		for (String k: keys(filter)) {
-			remove(k);
+		return removeAll(keys(filter));
+	}
+
+	@Override
+	public int remove(CacheEntryFilter filter) throws IOException {
+		return removeAll(keys(filter));
+	}
+
+	/**
+	 * deletes the given (existing) keys with BatchWriteItem requests of up to 25 deletes, sent in
+	 * parallel, and returns the number of keys
+	 */
+	private int removeAll(List<String> keys) throws IOException {
+		try {
+			WriteBehind wb = writeBehind;
+			List<WriteRequest> requests = new ArrayList<>(keys.size());
+			for (String key: keys) {
+				if (wb != null) wb.discard(key);
+				requests.add(WriteRequest.builder().deleteRequest(DeleteRequest.builder().key(keyOf(key)).build()).build());
+			}
+			metrics.removes.add(keys.size());
+			batchWrite(requests);
+			return keys.size();
+		}
+		catch (Exception e) {
+			throw handleException(e);
 		}
-		return 0;
-	}
-
-	@Override
-	public int remove(CacheEntryFilter filter) throws IOException {
-		for (String k: keys(filter)) {
-			remove(k);
+		finally {
+			for (String key: keys) {
+				invalidate(key);
+			}
 		}
-		return 0;
 	}
 
 	@Override
@@ -305,56 +1438,32 @@ public class DynamoDBCache extends CacheSupport {
 
 	@Override
 	public List<String> keys(CacheKeyFilter filter) throws IOException {
+		long start = System.nanoTime();
 		try {
+			flushWriteBehind();
 			List<String> result = new ArrayList<>();
-			Map<String, AttributeValue> lastEvaluatedKey = null;
-
-			do {
-				// Build scan request
-				ScanRequest.Builder scanBuilder = ScanRequest.builder().tableName(tableName);
-
-				// Handle pagination
-				if (lastEvaluatedKey != null) {
-					scanBuilder.exclusiveStartKey(lastEvaluatedKey);
+			for (Map<String, AttributeValue> item: scan(scanRequest(filter, keyProjection))) {
+				// Skip invalid/expired items
+				String key = cacheKeyOf(item);
+				if (key == null || !valid(item)) {
+					continue;
 				}
 
-				ScanRequest scanRequest = scanBuilder.build();
-				ScanResponse response = getClient().scan(scanRequest);
-
-				// Process items
-				for (Map<String, AttributeValue> item: response.items()) {
-
-					// Skip invalid/expired items
-					if (!valid(item)) {
-						continue;
-					}
-					// Get the key
-					AttributeValue keyAttr = item.get(this.primaryKeyName);
-					if (keyAttr == null || keyAttr.s() == null) {
-						continue;
-					}
-					String key = keyAttr.s();
-
-					// Apply filter if provided
-					if (filter != null && !filter.accept(key)) {
-						continue;
-					}
-
-					result.add(key);
+				// Apply filter if provided
+				if (filter != null && !filter.accept(key)) {
+					continue;
 				}
 
-				// Get pagination token for next iteration
-				lastEvaluatedKey = response.lastEvaluatedKey();
-
+				result.add(key);
 			}
-			while (lastEvaluatedKey != null && !lastEvaluatedKey.isEmpty());
-
 			return result;
-
 		}
 		catch (Exception e) {
 			throw handleException(e);
 		}
+		finally {
+			metrics.scan.record(start);
+		}
 	}
 
 	@Override
@@ -401,123 +1510,277 @@ public class DynamoDBCache extends CacheSupport {
 
 	@Override
 	public List<CacheEntry> entries(CacheKeyFilter filter) throws IOException {
+		long start = System.nanoTime();
 		try {
+			flushWriteBehind();
 			List<CacheEntry> result = new ArrayList<>();
-			Map<String, AttributeValue> lastEvaluatedKey = null;
-
-			do {
-				// Build scan request
-				ScanRequest.Builder scanBuilder = ScanRequest.builder().tableName(tableName);
-
-				// Handle pagination
-				if (lastEvaluatedKey != null) {
-					scanBuilder.exclusiveStartKey(lastEvaluatedKey);
+			for (Map<String, AttributeValue> item: scan(scanRequest(filter, null))) {
+				// Skip invalid/expired items
+				String key = cacheKeyOf(item);
+				if (key == null || !valid(item)) {
+					continue;
 				}
 
-				ScanRequest scanRequest = scanBuilder.build();
-				ScanResponse response = getClient().scan(scanRequest);
-
-				// Process items
-				for (Map<String, AttributeValue> item: response.items()) {
-					// Skip invalid/expired items
-					if (!valid(item)) {
-						continue;
-					}
-
-					// Get the key
-					AttributeValue keyAttr = item.get(this.primaryKeyName);
-					if (keyAttr == null || keyAttr.s() == null) {
-						continue;
-					}
-					String key = keyAttr.s();
-
-					// Apply filter if provided
-					if (filter != null && !filter.accept(key)) {
-						continue;
-					}
-
-					result.add(new DynamoDBCacheEntry(key, item, log));
+				// Apply filter if provided
+				if (filter != null && !filter.accept(key)) {
+					continue;
 				}
 
-				// Get pagination token for next iteration
-				lastEvaluatedKey = response.lastEvaluatedKey();
-
+				result.add(decodeAhead(new DynamoDBCacheEntry(key, item, log)));
 			}
-			while (lastEvaluatedKey != null && !lastEvaluatedKey.isEmpty());
-
 			return result;
-
 		}
 		catch (Exception e) {
 			throw handleException(e);
 		}
+		finally {
+			metrics.scan.record(start);
+		}
 	}
 
 	@Override
 	public List<CacheEntry> entries(CacheEntryFilter filter) throws IOException {
+		long start = System.nanoTime();
 		try {
+			flushWriteBehind();
 			List<CacheEntry> result = new ArrayList<>();
-			Map<String, AttributeValue> lastEvaluatedKey = null;
-
-			do {
-				// Build scan request
-				ScanRequest.Builder scanBuilder = ScanRequest.builder().tableName(tableName);
-
-				// Handle pagination
-				if (lastEvaluatedKey != null) {
-					scanBuilder.exclusiveStartKey(lastEvaluatedKey);
+			// with a decode pool, the filter runs a window of entries behind the scan, so their values
+			// are decoded in the meantime, without one every entry is filtered right away
+			int window = filter == null ? 0 : decodeThreads * 64;
+			ArrayDeque<CacheEntry> pending = new ArrayDeque<>(window);
+			for (Map<String, AttributeValue> item: scan(scanRequest(null, null))) {
+				// Skip invalid/expired items
+				String key = cacheKeyOf(item);
+				if (key == null || !valid(item)) {
+					continue;
 				}
 
-				ScanRequest scanRequest = scanBuilder.build();
-				ScanResponse response = getClient().scan(scanRequest);
+				DynamoDBCacheEntry entry = new DynamoDBCacheEntry(key, item, log);
+				if (filter == null) {
+					result.add(decodeAhead(entry));
+					continue;
+				}
+				if (window == 0) {
+					if (filter.accept(entry)) result.add(entry);
+					continue;
+				}
+				pending.add(decodeAhead(entry));
+				if (pending.size() > window) {
+					CacheEntry next = pending.poll();
+					if (filter.accept(next)) result.add(next);
+				}
+			}
+			for (CacheEntry entry: pending) {
+				if (filter.accept(entry)) result.add(entry);
+			}
+			return result;
+		}
+		catch (Exception e) {
+			throw handleException(e);
+		}
+		finally {
+			metrics.scan.record(start);
+		}
+	}
 
-				// Process items
-				for (Map<String, AttributeValue> item: response.items()) {
-					// Skip invalid/expired items
-					if (!valid(item)) {
-						continue;
-					}
+	/**
+	 * returns what is added to the scan requests, with filter pushdown enabled expired items and keys
+	 * not matching a wildcard filter are already dropped by DynamoDB
+	 */
+	private Consumer<ScanRequest.Builder> scanRequest(CacheKeyFilter filter, String projection) {
+		if (filterPushdown) {
+			Namespace ns = namespace;
+			// with composite keys the stored key is split over two attributes, only the ttl check is pushed down
+			if (sortKeyName != null) return new ScanFilter(primaryKeyName, sortKeyName, null, null, projection);
+			return new ScanFilter(primaryKeyName, null, ns == null ? null : ns.prefix(), keyFilterPushdown ? filter : null, projection);
+		}
+		if (projection == null) return null;
+		return r -> r.projectionExpression(projection).expressionAttributeNames(keyAttributeNames);
+	}
 
-					// Get the key
-					AttributeValue keyAttr = item.get(this.primaryKeyName);
-					if (keyAttr == null || keyAttr.s() == null) {
-						continue;
-					}
-					String key = keyAttr.s();
+	/**
+	 * scans the whole table as a parallel scan, see {@link ScanIterator}. The items are returned as they
+	 * are stored, processing them (validity, filters, decoding) is left to the calling thread, while it
+	 * does so, the next pages are already fetched. Errors are thrown as {@link CompletionException}
+	 * while iterating.
+	 * 
+	 * @param request optional callback to add to every scan request (projection, filter expression)
+	 */
+	private Iterable<Map<String, AttributeValue>> scan(Consumer<ScanRequest.Builder> request) {
+		int segments = getScanSegments();
+		return () -> {
+			Iterator<Map<String, AttributeValue>> it = new ScanIterator(this::getAsyncClient, tableName, request, segments);
+			return new Iterator<Map<String, AttributeValue>>() {
+				@Override
+				public boolean hasNext() {
+					return it.hasNext();
+				}
 
-					// Create CacheEntry for filtering
-					DynamoDBCacheEntry entry = new DynamoDBCacheEntry(key, item, log);
+				@Override
+				public Map<String, AttributeValue> next() {
+					Map<String, AttributeValue> item = it.next();
+					metrics.scanned.increment();
+					return item;
+				}
+			};
+		};
+	}
 
-					// Apply filter if provided
-					if (filter == null || filter.accept(entry)) {
-						result.add(entry);
+	/**
+	 * iterates over the valid entries matching the filter without loading them all into memory, the
+	 * table is read a page at a time while iterating. Errors are thrown as {@link CompletionException}.
+	 * 
+	 * @param filter key filter, can be null
+	 */
+	public Iterator<CacheEntry> entryIterator(CacheKeyFilter filter) throws IOException {
+		try {
+			flushWriteBehind();
+			Iterator<Map<String, AttributeValue>> items = scan(scanRequest(filter, null)).iterator();
+			return new Iterator<CacheEntry>() {
+				private CacheEntry next;
+
+				@Override
+				public boolean hasNext() {
+					while (next == null && items.hasNext()) {
+						Map<String, AttributeValue> item = items.next();
+						try {
+							String key = cacheKeyOf(item);
+							if (key == null || !valid(item) || (filter != null && !filter.accept(key))) continue;
+							next = new DynamoDBCacheEntry(key, item, log);
+						}
+						catch (Exception e) {
+							throw new CompletionException(e);
+						}
 					}
+					return next != null;
 				}
 
-				// Get pagination token for next iteration
-				lastEvaluatedKey = response.lastEvaluatedKey();
+				@Override
+				public CacheEntry next() {
+					if (!hasNext()) throw new NoSuchElementException();
+					CacheEntry entry = next;
+					next = null;
+					return entry;
+				}
+			};
+		}
+		catch (Exception e) {
+			throw handleException(e);
+		}
+	}
 
-			}
-			while (lastEvaluatedKey != null && !lastEvaluatedKey.isEmpty());
+	/**
+	 * same as {@link #entryIterator(CacheKeyFilter)} as a stream
+	 */
+	public Stream<CacheEntry> stream(CacheKeyFilter filter) throws IOException {
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(entryIterator(filter), Spliterator.NONNULL), false);
+	}
 
+	/**
+	 * returns the valid entries of a group, that are all keys sharing the same partition key, e.g.
+	 * "user:42:profile" and "user:42:settings" for the group "user:42". The group is read with a Query
+	 * instead of a scan of the whole table. Only supported with a key delimiter.
+	 */
+	public List<CacheEntry> getGroup(String group) throws IOException {
+		try {
+			flushWriteBehind();
+			List<CacheEntry> result = new ArrayList<>();
+			for (Map<String, AttributeValue> item: query(group, null)) {
+				String key = groupMember(item);
+				if (key == null || !valid(item)) continue;
+				result.add(decodeAhead(new DynamoDBCacheEntry(key, item, log)));
+			}
 			return result;
+		}
+		catch (Exception e) {
+			throw handleException(e);
+		}
+	}
 
+	/**
+	 * returns the keys of the valid entries of a group, see {@link #getGroup(String)}
+	 */
+	public List<String> groupKeys(String group) throws IOException {
+		try {
+			flushWriteBehind();
+			List<String> result = new ArrayList<>();
+			for (Map<String, AttributeValue> item: query(group, keyProjection)) {
+				String key = groupMember(item);
+				if (key == null || !valid(item)) continue;
+				result.add(key);
+			}
+			return result;
 		}
 		catch (Exception e) {
 			throw handleException(e);
 		}
 	}
 
+	/**
+	 * removes all entries of a group, see {@link #getGroup(String)}, and returns the number of entries
+	 * removed
+	 */
+	public int removeGroup(String group) throws IOException {
+		return removeAll(groupKeys(group));
+	}
+
+	/**
+	 * reads all items with the partition key of the group, page by page while iterating
+	 */
+	private Iterable<Map<String, AttributeValue>> query(String group, String projection) throws IOException {
+		if (sortKeyName == null) {
+			throw new IOException("group operations are only supported by caches with a key delimiter, the cache uses the table [" + tableName + "] without a sort key");
+		}
+		Namespace ns = namespace;
+		QueryRequest.Builder request = QueryRequest.builder().tableName(tableName).keyConditionExpression("#pk = :pk")
+				.expressionAttributeValues(Map.of(":pk", AttributeValue.builder().s(ns == null ? group : ns.prefix() + group).build()));
+		if (projection == null) request.expressionAttributeNames(Map.of("#pk", primaryKeyName));
+		else request.projectionExpression(projection).expressionAttributeNames(keyAttributeNames);
+		return getClient().queryPaginator(request.build()).items();
+	}
+
+	/**
+	 * the cache key of an item returned for a group, null for the item stored with the group itself as
+	 * key, that one is not a member of the group
+	 */
+	private String groupMember(Map<String, AttributeValue> item) {
+		AttributeValue sortAttr = item.get(sortKeyName);
+		if (sortAttr == null || keyDelimiter.equals(sortAttr.s())) return null;
+		return cacheKeyOf(item);
+	}
+
+	/**
+	 * number of segments used for a scan, either the configured number or one segment per 64 MB of
+	 * table size (as reported by DescribeTable, which is only updated every few hours anyway, so the
+	 * value is kept for a while)
+	 */
+	private int getScanSegments() {
+		if (scanSegments > 0) return scanSegments;
+
+		long now = System.currentTimeMillis();
+		if (autoScanSegmentsExpires > now) return autoScanSegments;
+
+		int segments = 1;
+		try {
+			Long size = getClient().describeTable(DescribeTableRequest.builder().tableName(tableName).build()).table().tableSizeBytes();
+			if (size != null) segments = (int) Math.min(scanMaxSegments, size / SCAN_SEGMENT_BYTES + 1);
+		}
+		catch (Exception e) {
+			if (log != null) log.error("dynamodb-cache", "failed to read the size of table [" + tableName + "], scanning with a single segment", e);
+		}
+		autoScanSegments = Math.max(1, segments);
+		autoScanSegmentsExpires = now + SCAN_SEGMENTS_TIMEOUT;
+		return autoScanSegments;
+	}
+
 	@Override
 	public long hitCount() throws IOException {
-		// TODO Auto-generated method stub
-		return 0;
+		return metrics.hits.sum();
 	}
 
 	@Override
 	public long missCount() throws IOException {
-		// TODO Auto-generated method stub
-		return 0;
+		return metrics.misses.sum();
 	}
 
 	@Override
@@ -530,9 +1793,42 @@ public class DynamoDBCache extends CacheSupport {
 			data.setEL("table", tableName);
 			data.setEL("region", region);
 			data.setEL("liveTimeout", liveTimeout);
+			if (sortKeyName != null) {
+				data.setEL("sortKey", sortKeyName);
+				data.setEL("keyDelimiter", keyDelimiter);
+			}
 			if (host != null) {
 				data.setEL("host", host);
 			}
+			NearCache nc = nearCache;
+			if (nc != null) {
+				data.setEL("nearCache", nc.getInfo());
+			}
+			NegativeCache neg = negativeCache;
+			if (neg != null) {
+				data.setEL("negativeCache", neg.getInfo());
+			}
+			ReadBatcher rb = readBatcher;
+			if (rb != null) {
+				data.setEL("readBatching", rb.getInfo());
+			}
+			data.setEL("metrics", metrics.getInfo());
+			data.setEL("coalescedReads", reads.shared());
+			WriteBehind wb = writeBehind;
+			if (wb != null) {
+				data.setEL("writeBehind", wb.getInfo());
+			}
+			TouchQueue tq = touchQueue;
+			if (tq != null) {
+				data.setEL("touch", tq.getInfo());
+			}
+			data.setEL("connectionPool", getClientInstance().getPoolInfo());
+			// what the last scan used, reading the info does not ask DynamoDB for the table size
+			data.setEL("scanSegments", scanSegments > 0 ? scanSegments : autoScanSegments);
+			Namespace ns = namespace;
+			if (ns != null) {
+				data.setEL("namespace", ns.getInfo());
+			}
 
 			// Get table metadata from DynamoDB
 			DynamoDbClient client = getClient();
@@ -624,8 +1920,220 @@ public class DynamoDBCache extends CacheSupport {
 
 	@Override
 	public int clear() throws IOException {
-		// Remove all items by passing null filter (accepts everything)
-		return remove((CacheKeyFilter) null);
+		// Remove all items, including the membership items of tags
+		WriteBehind wb = writeBehind;
+		if (wb != null) wb.clear();
+		try {
+			Namespace ns = namespace;
+			if (ns != null) return nextGeneration(ns);
+			if (clearByRecreate) return recreateTable();
+			return removeEverything();
+		}
+		finally {
+			NearCache nc = nearCache;
+			if (nc != null) nc.clear();
+			NegativeCache neg = negativeCache;
+			if (neg != null) neg.clear();
+		}
+	}
+
+	/**
+	 * deletes all valid entries and the membership items of tags found with one scan, returns the number
+	 * of entries
+	 */
+	private int removeEverything() throws IOException {
+		try {
+			flushWriteBehind();
+			List<String> keys = new ArrayList<>();
+			List<WriteRequest> tagItems = new ArrayList<>();
+			for (Map<String, AttributeValue> item: scan(scanRequest(null, keyProjection))) {
+				String key = cacheKeyOf(item);
+				if (key != null) {
+					if (valid(item)) keys.add(key);
+					continue;
+				}
+				String storedKey = storedKey(item);
+				if (storedKey != null && storedKey.startsWith(TAG_KEY_PREFIX)) {
+					tagItems.add(WriteRequest.builder().deleteRequest(DeleteRequest.builder().key(storedKeyOf(storedKey)).build()).build());
+				}
+			}
+			batchWrite(tagItems);
+			return removeAll(keys);
+		}
+		catch (Exception e) {
+			throw handleException(e);
+		}
+	}
+
+	/**
+	 * clears the cache by moving on to the next generation, the items of the previous generations are
+	 * no longer reachable. Items with a ttl are removed by DynamoDB, the ones without are deleted by a
+	 * background sweep. As the items are not counted, 0 is returned.
+	 */
+	private int nextGeneration(Namespace ns) throws IOException {
+		try {
+			long previous = ns.next();
+			if (log != null) log.info("dynamodb-cache", "cleared table [" + tableName + "] by moving to generation [" + ns.generation() + "]");
+			startSweep(previous);
+			return 0;
+		}
+		catch (Exception e) {
+			throw handleException(e);
+		}
+	}
+
+	/**
+	 * starts a sweep of the given and all older generations, while one is running it picks up the
+	 * newest generation cleared in the meantime when it is done
+	 */
+	private synchronized void startSweep(long generation) {
+		if (sweep != null) {
+			sweep.next = Math.max(sweep.next, generation);
+			return;
+		}
+		sweep = new Sweep(generation);
+		getScheduler().execute(sweep);
+	}
+
+	private synchronized void continueSweep(Sweep s) {
+		if (sweep == s && !s.cancelled) getScheduler().execute(s);
+	}
+
+	private synchronized void sweepDone(Sweep s) {
+		if (sweep != s) return;
+		sweep = null;
+		if (s.next >= 0 && !s.cancelled) startSweep(s.next);
+	}
+
+	/**
+	 * deletes the items without a ttl of the given and all older generations, the ones with a ttl are
+	 * left to DynamoDB. The table is scanned in slices on the scheduler, so the other background tasks
+	 * are not held up for the whole scan.
+	 */
+	private final class Sweep implements Runnable {
+		private final long generation;
+		// newest generation cleared while this sweep runs (guarded by the cache), -1 for none
+		private long next = -1;
+		private volatile boolean cancelled;
+		private Iterator<Map<String, AttributeValue>> items;
+		private List<WriteRequest> requests = new ArrayList<>();
+		private int count;
+
+		private Sweep(long generation) {
+			this.generation = generation;
+		}
+
+		@Override
+		public void run() {
+			try {
+				if (items == null) items = scan(r -> r.projectionExpression(keyProjection).expressionAttributeNames(keyAttributeNames)).iterator();
+				for (int i = 0; i < SWEEP_SLICE && items.hasNext(); i++) {
+					if (cancelled) return;
+					Map<String, AttributeValue> item = items.next();
+					if (item.containsKey("ttl")) continue;
+					String storedKey = storedKey(item);
+					long gen = Namespace.generationOf(storedKey);
+					if (gen < 0 || gen > generation) continue;
+
+					requests.add(WriteRequest.builder().deleteRequest(DeleteRequest.builder().key(storedKeyOf(storedKey)).build()).build());
+					if (requests.size() >= MAX_BATCH_WRITE * batchParallelism * 4) {
+						batchWrite(requests);
+						count += requests.size();
+						requests = new ArrayList<>();
+					}
+				}
+				if (cancelled) return;
+				if (items.hasNext()) {
+					continueSweep(this);
+					return;
+				}
+				if (!requests.isEmpty()) {
+					batchWrite(requests);
+					count += requests.size();
+				}
+				if (log != null) log.info("dynamodb-cache", "deleted [" + count + "] items without a ttl of generation [" + generation + "] and older from table [" + tableName + "]");
+			}
+			catch (Exception e) {
+				if (log != null) log.error("dynamodb-cache", "failed to delete the items of generation [" + generation + "] from table [" + tableName + "]", e);
+			}
+			sweepDone(this);
+		}
+	}
+
+	/**
+	 * picks up a generation changed by an other node, what is held locally belongs to the old one
+	 */
+	private void refreshNamespace() {
+		Namespace ns = namespace;
+		if (ns == null) return;
+		try {
+			if (ns.refresh()) {
+				NearCache nc = nearCache;
+				if (nc != null) nc.clear();
+				NegativeCache neg = negativeCache;
+				if (neg != null) neg.clear();
+			}
+		}
+		catch (Exception e) {
+			if (log != null) log.error("dynamodb-cache", "failed to read the generation of table [" + tableName + "]", e);
+		}
+	}
+
+	/**
+	 * clears the cache by dropping the table and creating it again, way faster than deleting every item
+	 * of a large table, but the cache is not usable (on all nodes) until the table is active again.
+	 * Returns the number of items the table had as reported by DescribeTable (updated about every 6
+	 * hours).
+	 */
+	private int recreateTable() throws IOException {
+		try {
+			DynamoDbClient client = getClient();
+			DescribeTableRequest describeRequest = DescribeTableRequest.builder().tableName(tableName).build();
+			Long count = client.describeTable(describeRequest).table().itemCount();
+
+			if (log != null) log.info("dynamodb-cache", "clearing table [" + tableName + "] by dropping and recreating it");
+			client.deleteTable(DeleteTableRequest.builder().tableName(tableName).build());
+			client.waiter().waitUntilTableNotExists(describeRequest);
+			createTable(client);
+			autoScanSegmentsExpires = 0;
+			return count == null ? 0 : count.intValue();
+		}
+		catch (Exception e) {
+			throw handleException(e);
+		}
+	}
+
+	/**
+	 * called by Lucee when the cache is no longer used, writes what is still pending and stops the
+	 * background threads
+	 */
+	public void release() throws IOException {
+		try {
+			WriteBehind wb = writeBehind;
+			if (wb != null) {
+				if (writeBehindId != null) WRITE_BEHINDS.remove(writeBehindId, wb);
+				wb.close();
+			}
+			TouchQueue tq = touchQueue;
+			if (tq != null) tq.close();
+		}
+		catch (Exception e) {
+			throw handleException(e);
+		}
+		finally {
+			synchronized (this) {
+				if (sweep != null) sweep.cancelled = true;
+				sweep = null;
+				if (scheduler != null) scheduler.shutdown();
+				if (rotator != null) rotator.shutdown();
+				if (decoder != null) decoder.shutdown();
+				if (refresher != null) refresher.shutdown();
+				scheduler = null;
+				rotator = null;
+				decoder = null;
+				refresher = null;
+			}
+		}
 	}
 
 	private void ensureTableExists() throws IOException {
@@ -637,17 +2145,29 @@ public class DynamoDBCache extends CacheSupport {
 				DescribeTableResponse response = client.describeTable(describeRequest);
 
 				// DYNAMIC DISCOVERY
-				// We find the attribute name that is marked as the HASH key
+				// We find the attribute names that are marked as the HASH and RANGE key
 				List<KeySchemaElement> schema = response.table().keySchema();
+				String rangeKeyName = null;
 				for (KeySchemaElement element: schema) {
 					if (element.keyType() == KeyType.HASH) {
 						this.primaryKeyName = element.attributeName();
-						break;
 					}
+					else if (element.keyType() == KeyType.RANGE) {
+						rangeKeyName = element.attributeName();
+					}
+				}
+
+				// the key schema of an existing table can not be changed
+				if (keyDelimiter != null && rangeKeyName == null) {
+					throw new IOException("Table '" + tableName + "' has no sort key, a key delimiter can only be used with a table that has a partition and a sort key");
+				}
+				if (keyDelimiter == null && rangeKeyName != null) {
+					throw new IOException("Table '" + tableName + "' has the sort key [" + rangeKeyName + "], define a key delimiter to use this table");
 				}
+				this.sortKeyName = rangeKeyName;
 
 				if (log != null) {
-					log.debug("dynamodb-cache", "Table '" + tableName + "' exists. Using PK: " + primaryKeyName);
+					log.debug("dynamodb-cache", "Table '" + tableName + "' exists. Using PK: " + primaryKeyName + (sortKeyName == null ? "" : ", SK: " + sortKeyName));
 				}
 				return;
 
@@ -660,21 +2180,46 @@ public class DynamoDBCache extends CacheSupport {
 
 			// If we reach here, we are creating the table
 			this.primaryKeyName = primaryKey; // Ensure we use our preferred default for new tables
-
-			CreateTableRequest createRequest = CreateTableRequest.builder().tableName(tableName)
-					.keySchema(KeySchemaElement.builder().attributeName(primaryKeyName).keyType(KeyType.HASH).build())
-					.attributeDefinitions(AttributeDefinition.builder().attributeName(primaryKeyName).attributeType(ScalarAttributeType.S).build())
-					.billingMode(BillingMode.PAY_PER_REQUEST).build();
-
-			client.createTable(createRequest);
-
-			// ... rest of your existing waitForTableActive and enableTTL logic
+			this.sortKeyName = keyDelimiter == null ? null : sortKey;
+			createTable(client);
 		}
 		catch (Exception e) {
 			throw handleException(e);
 		}
 	}
 
+	/**
+	 * creates the table, waits until it is active and enables the expiration of items by the ttl
+	 * attribute
+	 */
+	private void createTable(DynamoDbClient client) {
+		List<KeySchemaElement> keySchema = new ArrayList<>();
+		List<AttributeDefinition> attributes = new ArrayList<>();
+		keySchema.add(KeySchemaElement.builder().attributeName(primaryKeyName).keyType(KeyType.HASH).build());
+		attributes.add(AttributeDefinition.builder().attributeName(primaryKeyName).attributeType(ScalarAttributeType.S).build());
+		if (sortKeyName != null) {
+			keySchema.add(KeySchemaElement.builder().attributeName(sortKeyName).keyType(KeyType.RANGE).build());
+			attributes.add(AttributeDefinition.builder().attributeName(sortKeyName).attributeType(ScalarAttributeType.S).build());
+		}
+		CreateTableRequest.Builder createRequest = CreateTableRequest.builder().tableName(tableName).keySchema(keySchema).billingMode(BillingMode.PAY_PER_REQUEST);
+		if (tags) {
+			// the tag index is sparse, only the membership items of tags are part of it
+			attributes.add(tagIndexAttribute());
+			createRequest.globalSecondaryIndexes(
+					GlobalSecondaryIndex.builder().indexName(TAG_INDEX).keySchema(tagIndexKey()).projection(tagIndexProjection()).build());
+		}
+		createRequest.attributeDefinitions(attributes);
+
+		client.createTable(createRequest.build());
+		client.waiter().waitUntilTableExists(DescribeTableRequest.builder().tableName(tableName).build());
+
+		client.updateTimeToLive(UpdateTimeToLiveRequest.builder().tableName(tableName)
+				.timeToLiveSpecification(TimeToLiveSpecification.builder().attributeName("ttl").enabled(true).build()).build());
+		if (log != null) {
+			log.info("dynamodb-cache", "Table '" + tableName + "' created. Using PK: " + primaryKeyName + (sortKeyName == null ? "" : ", SK: " + sortKeyName));
+		}
+	}
+
 	//////////////////// helper methods /////////////////////
 
 	private Long calculateExpiration(long nowMillis, Long idleTime, Long until) {
@@ -682,19 +2227,264 @@ public class DynamoDBCache extends CacheSupport {
 
 		// 'until' is absolute expiration time (epoch milliseconds)
 		if (until != null && until > 0) {
-			return (nowMillis + until) / 1000; // Convert to seconds for DynamoDB TTL
+			return nowMillis + jitter(until);
 		}
 
 		// 'idleTime' is relative time in milliseconds
 		if (idleTime != null && idleTime > 0) {
-			return (nowMillis + idleTime) / 1000;
+			return nowMillis + jitter(idleTime);
 		}
 
 		return null; // No expiration
 	}
 
+	/**
+	 * the value of the ttl attribute for the given expiration, in seconds as DynamoDB expects it and
+	 * extended by the stale grace period
+	 */
+	private long toTTL(long expirationTime) {
+		return (expirationTime + staleGracePeriod) / 1000;
+	}
+
+	/**
+	 * shortens the lifetime by a random part (up to ttlJitter of it), so entries written together do
+	 * not all expire in the same second
+	 */
+	private long jitter(long lifetime) {
+		if (ttlJitter <= 0) return lifetime;
+		return lifetime - (long) (lifetime * ttlJitter * ThreadLocalRandom.current().nextDouble());
+	}
+
+	private Map<String, AttributeValue> keyOf(String key) {
+		Namespace ns = namespace;
+		return storedKeyOf(ns == null ? key : ns.prefix() + key);
+	}
+
+	/**
+	 * with composite keys, the key is split at the last delimiter into partition and sort key
+	 * ("user:42:profile" becomes "user:42" and "profile"). Keys without a delimiter (or ending with it)
+	 * are stored with the delimiter itself as sort key, a value the split never produces. The generation
+	 * prefix of a namespace is never split off, it stays part of the partition key ("5:foo" is stored
+	 * as "5:foo" and not as "5" and "foo"), so keys without a delimiter do not all share one partition.
+	 */
+	private Map<String, AttributeValue> storedKeyOf(String key) {
+		if (sortKeyName == null) return Map.of(primaryKeyName, AttributeValue.builder().s(key).build());
+
+		int from = namespaces ? Namespace.prefixLength(key) : 0;
+		int index = key.lastIndexOf(keyDelimiter);
+		String pk = key, sk = keyDelimiter;
+		if (index > from && index + keyDelimiter.length() < key.length()) {
+			pk = key.substring(0, index);
+			sk = key.substring(index + keyDelimiter.length());
+		}
+		return Map.of(primaryKeyName, AttributeValue.builder().s(pk).build(), sortKeyName, AttributeValue.builder().s(sk).build());
+	}
+
+	/**
+	 * creates the complete item for an entry, with the same attributes put sets
+	 */
+	private Map<String, AttributeValue> toItem(String key, Object value, long nowMillis, Long idleTime, Long until, Long computeTime) throws IOException, PageException {
+		Map<String, AttributeValue> item = new HashMap<>(keyOf(key));
+		AttributeValue now = AttributeValue.builder().n(String.valueOf(nowMillis)).build();
+		item.put("value", Coder.toAttributeValue(value));
+		item.put("updatedTime", now);
+		item.put("createdTime", now);
+
+		Long expirationTime = calculateExpiration(nowMillis, idleTime, until);
+		if (expirationTime != null) {
+			item.put("ttl", AttributeValue.builder().n(String.valueOf(toTTL(expirationTime))).build());
+			if (staleGracePeriod > 0) item.put("expires", AttributeValue.builder().n(String.valueOf(expirationTime)).build());
+		}
+		if (idleTime != null && idleTime > 0) {
+			item.put("idle", AttributeValue.builder().n(String.valueOf(idleTime)).build());
+		}
+		if (until != null && until > 0) {
+			item.put("until", AttributeValue.builder().n(String.valueOf(until)).build());
+		}
+		if (computeTime != null) {
+			item.put("computeTime", AttributeValue.builder().n(String.valueOf(computeTime)).build());
+		}
+		return item;
+	}
+
+	private String cacheKeyOf(Map<String, AttributeValue> item) {
+		String key = storedKey(item);
+		if (key == null) return null;
+		// items of an other generation (and the control item) are not part of the cache
+		Namespace ns = namespace;
+		if (ns != null) key = ns.toKey(key);
+		// neither are the membership items of tags and the leases of getOrLoad
+		if (key != null && (key.startsWith(TAG_KEY_PREFIX) || key.startsWith(LEASE_KEY_PREFIX))) return null;
+		return key;
+	}
+
+	/**
+	 * the key as stored (including the namespace prefix), put together again from partition and sort key
+	 */
+	private String storedKey(Map<String, AttributeValue> item) {
+		AttributeValue keyAttr = item.get(primaryKeyName);
+		if (keyAttr == null || keyAttr.s() == null) return null;
+		if (sortKeyName == null) return keyAttr.s();
+
+		AttributeValue sortAttr = item.get(sortKeyName);
+		if (sortAttr == null || sortAttr.s() == null) return null;
+		if (keyDelimiter.equals(sortAttr.s())) return keyAttr.s();
+		return keyAttr.s() + keyDelimiter + sortAttr.s();
+	}
+
+	/**
+	 * starts decoding the value of the entry in the background when a decode pool is configured, when
+	 * the pool is busy, the calling thread decodes it itself (so the queue stays bounded)
+	 */
+	private DynamoDBCacheEntry decodeAhead(DynamoDBCacheEntry entry) {
+		if (decodeThreads > 0) {
+			getDecoder().execute(() -> {
+				try {
+					entry.getValue();
+				}
+				catch (Exception e) {
+					// thrown again when the value is asked for
+				}
+			});
+		}
+		return entry;
+	}
+
+	private synchronized ExecutorService getDecoder() {
+		if (decoder == null) {
+			ThreadPoolExecutor tpe = new ThreadPoolExecutor(decodeThreads, decodeThreads, 60L, TimeUnit.SECONDS, new ArrayBlockingQueue<>(decodeThreads * 64),
+					CommonUtil.createThreadFactory("dynamodb-cache-" + tableName + "-decoder"), new ThreadPoolExecutor.CallerRunsPolicy());
+			tpe.allowCoreThreadTimeOut(true);
+			decoder = tpe;
+		}
+		return decoder;
+	}
+
+	private synchronized ExecutorService getRefresher() {
+		if (refresher == null) {
+			// a refresh that does not fit into the queue is rejected and skipped, the stale value is served on
+			ThreadPoolExecutor tpe = new ThreadPoolExecutor(4, 4, 60L, TimeUnit.SECONDS, new ArrayBlockingQueue<>(REFRESH_QUEUE_SIZE),
+					CommonUtil.createThreadFactory("dynamodb-cache-" + tableName + "-refresher"), new ThreadPoolExecutor.AbortPolicy());
+			tpe.allowCoreThreadTimeOut(true);
+			refresher = tpe;
+		}
+		return refresher;
+	}
+
+	private synchronized ScheduledExecutorService getScheduler() {
+		if (scheduler == null) {
+			ScheduledThreadPoolExecutor stpe = new ScheduledThreadPoolExecutor(1, CommonUtil.createThreadFactory("dynamodb-cache-" + tableName + "-scheduler"));
+			stpe.setRemoveOnCancelPolicy(true);
+			scheduler = stpe;
+		}
+		return scheduler;
+	}
+
+	private synchronized ExecutorService getRotator() {
+		if (rotator == null) {
+			ThreadPoolExecutor tpe = new ThreadPoolExecutor(1, 1, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+					CommonUtil.createThreadFactory("dynamodb-cache-" + tableName + "-rotator"));
+			tpe.allowCoreThreadTimeOut(true);
+			rotator = tpe;
+		}
+		return rotator;
+	}
+
+	private void writeItems(List<Map<String, AttributeValue>> items) throws PageException {
+		List<WriteRequest> requests = new ArrayList<>(items.size());
+		for (Map<String, AttributeValue> item: items) {
+			requests.add(WriteRequest.builder().putRequest(PutRequest.builder().item(item).build()).build());
+		}
+		batchWrite(requests);
+	}
+
+	/**
+	 * Lucee creates a new instance when the cache is reconfigured and does not tell the old one, its
+	 * write behind is closed here, so it writes what is still pending and the old instance writes
+	 * directly from now on
+	 */
+	private void replaceWriteBehind(String id) {
+		WriteBehind wb = writeBehind;
+		writeBehindId = id;
+		WriteBehind previous = wb == null ? WRITE_BEHINDS.remove(id) : WRITE_BEHINDS.put(id, wb);
+		if (previous == null || previous == wb) return;
+		try {
+			previous.close();
+		}
+		catch (Exception e) {
+			if (log != null) log.error("dynamodb-cache", "failed to flush the write behind buffer of the replaced cache instance", e);
+		}
+	}
+
+	/**
+	 * makes sure pending writes are in the table before it gets scanned
+	 */
+	private void flushWriteBehind() throws Exception {
+		WriteBehind wb = writeBehind;
+		if (wb != null) wb.flush();
+	}
+
+	/**
+	 * runs the next attempt to send what DynamoDB could not process (throttling) after a delay,
+	 * exponential with jitter. No thread is blocked while waiting.
+	 */
+	private <T> CompletableFuture<T> retryAfterBackoff(int attempt, String operation, Supplier<CompletableFuture<T>> next) {
+		if (attempt >= MAX_BATCH_ATTEMPTS) {
+			return AsyncUtil.failed(eng.getExceptionUtil()
+					.createApplicationException(operation + " on table [" + tableName + "] still has unprocessed items after " + attempt + " attempts"));
+		}
+		metrics.throttles.increment();
+		long max = Math.min(1000L, 25L << attempt);
+		return AsyncUtil.delay(max / 2 + ThreadLocalRandom.current().nextLong(max / 2 + 1)).thenCompose(v -> next.get());
+	}
+
+	/**
+	 * drops all local state held for the given key, needs to be called after every local modification
+	 */
+	private void invalidate(String key) {
+		reads.forget(key);
+		TouchQueue tq = touchQueue;
+		if (tq != null) tq.discard(key);
+		NearCache nc = nearCache;
+		if (nc != null) nc.invalidate(key);
+		NegativeCache neg = negativeCache;
+		if (neg != null) neg.invalidate(key);
+	}
+
 	private IOException handleException(Exception e) {
-		return CFMLEngineFactory.getInstance().getExceptionUtil().toIOException(e);
+		return handleException(e, true);
+	}
+
+	/**
+	 * @param error false if the exception is no failure of the cache (like a miss), so it is not counted
+	 */
+	private IOException handleException(Exception e, boolean error) {
+		return CFMLEngineFactory.getInstance().getExceptionUtil().toIOException(error ? count(e) : AsyncUtil.unwrap(e));
+	}
+
+	/**
+	 * counts the error (and the throttle, if DynamoDB throttled the request) and returns its cause
+	 */
+	private Throwable count(Exception e) {
+		Throwable t = AsyncUtil.unwrap(e);
+		metrics.errors.increment();
+		if (t instanceof AwsServiceException && ((AwsServiceException) t).isThrottlingException()) metrics.throttles.increment();
+		return t;
+	}
+
+	/**
+	 * loads the value of an entry missing in the cache, see {@link #getOrLoad(String, Loader, Long, Long)}
+	 */
+	public interface Loader {
+		public Object load() throws Exception;
+	}
+
+	/**
+	 * registered with {@link DynamoDBCache#setLoader(Reloader)}, called in the thread reading a stale
+	 * entry to prepare the loader that is then executed in the background
+	 */
+	public interface Reloader {
+		public Loader prepare(String key) throws Exception;
 	}
 
 	private final boolean valid(GetItemResponse response) throws PageException {
@@ -704,6 +2494,10 @@ public class DynamoDBCache extends CacheSupport {
 		}
 
 		Map<String, AttributeValue> item = response.item();
+		AttributeValue expires = item.get("expires");
+		if (expires != null && System.currentTimeMillis() >= Long.parseLong(expires.n())) {
+			return false;
+		}
 		if (item.containsKey("ttl")) {
 			return (System.currentTimeMillis() / 1000) < (eng.getCastUtil().toLongValue(item.get("ttl").n()));
 		}
@@ -715,6 +2509,12 @@ public class DynamoDBCache extends CacheSupport {
 			return false;
 		}
 
+		// written with a stale grace period, the ttl is later than the expiration
+		AttributeValue expires = item.get("expires");
+		if (expires != null && System.currentTimeMillis() >= Long.parseLong(expires.n())) {
+			return false;
+		}
+
 		if (item.containsKey("ttl")) {
 			long ttlSeconds = eng.getCastUtil().toLongValue(item.get("ttl").n());
 			return (System.currentTimeMillis() / 1000) < ttlSeconds;
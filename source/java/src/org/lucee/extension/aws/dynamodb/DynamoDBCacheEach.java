@@ -0,0 +1,59 @@
+package org.lucee.extension.aws.dynamodb;
+
+import java.util.Iterator;
+
+import org.lucee.extension.aws.dynamodb.util.AsyncUtil;
+import org.lucee.extension.aws.dynamodb.util.CommonUtil;
+
+import lucee.commons.io.cache.CacheEntry;
+import lucee.loader.engine.CFMLEngine;
+import lucee.loader.engine.CFMLEngineFactory;
+import lucee.runtime.PageContext;
+import lucee.runtime.exp.PageException;
+import lucee.runtime.ext.function.BIF;
+import lucee.runtime.ext.function.Function;
+import lucee.runtime.type.UDF;
+import lucee.runtime.util.Cast;
+
+/**
+ * calls a closure for every entry in the cache, the entries are read a page at a time while
+ * iterating instead of loading them all into memory
+ */
+public class DynamoDBCacheEach extends BIF implements Function {
+
+	private static final long serialVersionUID = 6080371947416612273L;
+
+	@Override
+	public Object invoke(PageContext pc, Object[] args) throws PageException {
+		CFMLEngine eng = CFMLEngineFactory.getInstance();
+		Cast cast = eng.getCastUtil();
+
+		if (args.length < 1 || args.length > 3) {
+			throw eng.getExceptionUtil().createFunctionException(pc, "DynamoDBCacheEach", 1, 3, args.length);
+		}
+		if (!(args[0] instanceof UDF)) {
+			throw eng.getExceptionUtil().createApplicationException("first argument of function DynamoDBCacheEach needs to be a closure or function");
+		}
+		UDF closure = (UDF) args[0];
+		String filter = args.length > 1 && args[1] != null ? cast.toString(args[1]) : null;
+		// if no cache name is provided it will pick the default cache
+		String cacheName = args.length == 3 ? cast.toString(args[2]) : null;
+
+		try {
+			DynamoDBCache cache = CommonUtil.getDynamoDBCache(pc, eng, cacheName);
+			Iterator<CacheEntry> it = cache.entryIterator(CommonUtil.toKeyFilter(pc, filter));
+			int count = 0;
+			CacheEntry entry;
+			while (it.hasNext()) {
+				entry = it.next();
+				count++;
+				// returning false stops the iteration
+				if (Boolean.FALSE.equals(cast.toBoolean(closure.call(pc, new Object[] { entry.getKey(), entry.getValue() }, true), null))) break;
+			}
+			return count;
+		}
+		catch (Exception e) {
+			throw cast.toPageException(AsyncUtil.unwrap(e));
+		}
+	}
+}
@@ -1,19 +1,16 @@
 package org.lucee.extension.aws.dynamodb;
 
-import java.io.IOException;
 import java.util.Date;
 import java.util.Map;
 import java.util.Map.Entry;
 
 import org.lucee.extension.aws.dynamodb.util.Coder;
-import org.lucee.extension.aws.dynamodb.util.Coder.ValueSizePair;
 import org.lucee.extension.aws.dynamodb.util.CommonUtil;
 
 import lucee.commons.io.cache.CacheEntry;
 import lucee.commons.io.log.Log;
 import lucee.loader.engine.CFMLEngine;
 import lucee.loader.engine.CFMLEngineFactory;
-import lucee.runtime.exp.PageException;
 import lucee.runtime.type.Struct;
 import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
 
@@ -23,35 +20,47 @@ public class DynamoDBCacheEntry implements CacheEntry {
 	private Object value;
 	private Date[] created;
 	private Date[] lastModified;
+	private Date[] lastHit;
 	private long[] idle;
 	private long[] until;
-	private long size;
+	private volatile boolean decoded;
 	private Map<String, AttributeValue> item;
 	private Log log;
+	private ClassLoader cl;
 
-	public DynamoDBCacheEntry(String key, Map<String, AttributeValue> item, Log log) throws PageException, IOException {
+	public DynamoDBCacheEntry(String key, Map<String, AttributeValue> item, Log log) {
 		// Extract key
 		// AttributeValue keyAttr = item.get("cacheKey");
 		// this.key = keyAttr != null && keyAttr.s() != null ? keyAttr.s() : null;
 		this.key = key;
 		this.item = item;
 		this.log = log;
-
-		// Extract value
-		AttributeValue valueAttr = item.get("value");
-		if (valueAttr != null) {
-			ValueSizePair vsp = Coder.evaluate(Thread.currentThread().getContextClassLoader(), valueAttr);
-			this.value = vsp.value;
-			this.size = vsp.size;
-		}
-
+		// the value is only decoded when it is asked for, but with the classloader of the thread that read
+		// the entry
+		this.cl = Thread.currentThread().getContextClassLoader();
 	}
 
 	@Override
 	public Date lastHit() {
-		// DynamoDB doesn't track access time by default
-		// Would require additional attributes and update logic
-		return null;
+		if (lastHit == null) {
+			// only set when the lifetime got extended by a read (sliding expiration), in milliseconds
+			AttributeValue lastHitAttr = item.get("lastHit");
+			if (lastHitAttr != null && lastHitAttr.n() != null) {
+				CFMLEngine eng = CFMLEngineFactory.getInstance();
+				try {
+					this.lastHit = new Date[] { eng.getCastUtil().toDate(eng.getCastUtil().toLong(lastHitAttr.n()), null) };
+					return this.lastHit[0];
+				}
+				catch (Exception e) {
+					if (log != null) {
+						log.error("dynamodb", e);
+					}
+				}
+			}
+			this.lastHit = new Date[] { null };
+			return null;
+		}
+		return lastHit[0];
 	}
 
 	@Override
@@ -115,12 +124,31 @@ public class DynamoDBCacheEntry implements CacheEntry {
 
 	@Override
 	public Object getValue() {
+		if (!decoded) {
+			synchronized (this) {
+				if (!decoded) {
+					AttributeValue valueAttr = item.get("value");
+					if (valueAttr != null) {
+						try {
+							value = Coder.evaluate(cl, valueAttr).value;
+						}
+						catch (Exception e) {
+							CFMLEngine eng = CFMLEngineFactory.getInstance();
+							throw eng.getExceptionUtil().createPageRuntimeException(eng.getCastUtil().toPageException(e));
+						}
+					}
+					decoded = true;
+				}
+			}
+		}
 		return value;
 	}
 
 	@Override
 	public long size() {
-		return size;
+		// size as stored, no need to decode the value for it
+		AttributeValue valueAttr = item.get("value");
+		return valueAttr == null ? 0 : Coder.sizeOf(valueAttr);
 	}
 
 	@Override
@@ -167,9 +195,18 @@ public class DynamoDBCacheEntry implements CacheEntry {
 		return idle[0];
 	}
 
+	/**
+	 * true if the entry has expired and is only served during the stale grace period of the cache
+	 */
+	public boolean isStale() {
+		AttributeValue expires = item.get("expires");
+		return expires != null && expires.n() != null && System.currentTimeMillis() >= Long.parseLong(expires.n());
+	}
+
 	@Override
 	public Struct getCustomInfo() {
 		Struct data = CommonUtil.getInfo(this);
+		data.setEL("stale", isStale());
 
 		for (Entry<String, AttributeValue> e: item.entrySet()) {
 			if ("value".equals(e.getKey()) || "idle".equals(e.getKey()) || "until".equals(e.getKey()) || "createdTime".equals(e.getKey()) || "updatedTime".equals(e.getKey()))
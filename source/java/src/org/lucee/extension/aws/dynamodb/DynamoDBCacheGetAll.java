@@ -0,0 +1,55 @@
+package org.lucee.extension.aws.dynamodb;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.lucee.extension.aws.dynamodb.util.CommonUtil;
+
+import lucee.commons.io.cache.CacheEntry;
+import lucee.loader.engine.CFMLEngine;
+import lucee.loader.engine.CFMLEngineFactory;
+import lucee.runtime.PageContext;
+import lucee.runtime.exp.PageException;
+import lucee.runtime.ext.function.BIF;
+import lucee.runtime.ext.function.Function;
+import lucee.runtime.type.Struct;
+import lucee.runtime.util.Cast;
+
+/**
+ * returns the values for multiple keys at once, loaded with BatchGetItem instead of one request per
+ * key
+ */
+public class DynamoDBCacheGetAll extends BIF implements Function {
+
+	private static final long serialVersionUID = -3518409413541870411L;
+
+	@Override
+	public Object invoke(PageContext pc, Object[] args) throws PageException {
+		CFMLEngine eng = CFMLEngineFactory.getInstance();
+		Cast cast = eng.getCastUtil();
+
+		if (args.length < 1 || args.length > 2) {
+			throw eng.getExceptionUtil().createFunctionException(pc, "DynamoDBCacheGetAll", 1, 2, args.length);
+		}
+
+		// if no cache name is provided it will pick the default cache
+		String cacheName = args.length == 2 ? cast.toString(args[1]) : null;
+
+		try {
+			List<String> keys = new ArrayList<>();
+			for (Object key: cast.toList(args[0])) {
+				keys.add(CommonUtil.toCacheKey(pc, cast.toString(key)));
+			}
+
+			DynamoDBCache cache = CommonUtil.getDynamoDBCache(pc, eng, cacheName);
+			Struct result = eng.getCreationUtil().createStruct(Struct.TYPE_LINKED);
+			for (CacheEntry entry: cache.getAll(keys)) {
+				result.setEL(entry.getKey(), entry.getValue());
+			}
+			return result;
+		}
+		catch (Exception e) {
+			throw cast.toPageException(e);
+		}
+	}
+}
@@ -0,0 +1,48 @@
+package org.lucee.extension.aws.dynamodb;
+
+import org.lucee.extension.aws.dynamodb.util.CommonUtil;
+
+import lucee.commons.io.cache.CacheEntry;
+import lucee.loader.engine.CFMLEngine;
+import lucee.loader.engine.CFMLEngineFactory;
+import lucee.runtime.PageContext;
+import lucee.runtime.exp.PageException;
+import lucee.runtime.ext.function.BIF;
+import lucee.runtime.ext.function.Function;
+import lucee.runtime.type.Struct;
+import lucee.runtime.util.Cast;
+
+/**
+ * returns all entries of a group (all keys sharing the same partition key), read with a Query
+ * instead of a scan
+ */
+public class DynamoDBCacheGetGroup extends BIF implements Function {
+
+	private static final long serialVersionUID = 6030458276915502380L;
+
+	@Override
+	public Object invoke(PageContext pc, Object[] args) throws PageException {
+		CFMLEngine eng = CFMLEngineFactory.getInstance();
+		Cast cast = eng.getCastUtil();
+
+		if (args.length < 1 || args.length > 2) {
+			throw eng.getExceptionUtil().createFunctionException(pc, "DynamoDBCacheGetGroup", 1, 2, args.length);
+		}
+
+		// if no cache name is provided it will pick the default cache
+		String cacheName = args.length == 2 ? cast.toString(args[1]) : null;
+
+		try {
+			String group = CommonUtil.toCacheKey(pc, cast.toString(args[0]));
+			DynamoDBCache cache = CommonUtil.getDynamoDBCache(pc, eng, cacheName);
+			Struct result = eng.getCreationUtil().createStruct(Struct.TYPE_LINKED);
+			for (CacheEntry entry: cache.getGroup(group)) {
+				result.setEL(entry.getKey(), entry.getValue());
+			}
+			return result;
+		}
+		catch (Exception e) {
+			throw cast.toPageException(e);
+		}
+	}
+}
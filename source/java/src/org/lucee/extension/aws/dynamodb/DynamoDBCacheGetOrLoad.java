@@ -0,0 +1,59 @@
+package org.lucee.extension.aws.dynamodb;
+
+import org.lucee.extension.aws.dynamodb.util.CommonUtil;
+
+import lucee.loader.engine.CFMLEngine;
+import lucee.loader.engine.CFMLEngineFactory;
+import lucee.runtime.PageContext;
+import lucee.runtime.exp.PageException;
+import lucee.runtime.ext.function.BIF;
+import lucee.runtime.ext.function.Function;
+import lucee.runtime.type.UDF;
+import lucee.runtime.util.Cast;
+
+/**
+ * returns the value for a key, on a miss the value is loaded with the given closure and stored, only
+ * one request in the cluster loads the value at a time
+ */
+public class DynamoDBCacheGetOrLoad extends BIF implements Function {
+
+	private static final long serialVersionUID = -6420316427405181547L;
+
+	@Override
+	public Object invoke(PageContext pc, Object[] args) throws PageException {
+		CFMLEngine eng = CFMLEngineFactory.getInstance();
+		Cast cast = eng.getCastUtil();
+
+		if (args.length < 2 || args.length > 5) {
+			throw eng.getExceptionUtil().createFunctionException(pc, "DynamoDBCacheGetOrLoad", 2, 5, args.length);
+		}
+		if (!(args[1] instanceof UDF)) {
+			throw eng.getExceptionUtil().createApplicationException("second argument of function DynamoDBCacheGetOrLoad needs to be a closure or function");
+		}
+		UDF loader = (UDF) args[1];
+		Long until = args.length > 2 && args[2] != null ? cast.toTimespan(args[2]).getMillis() : null;
+		Long idle = args.length > 3 && args[3] != null ? cast.toTimespan(args[3]).getMillis() : null;
+		// if no cache name is provided it will pick the default cache
+		String cacheName = args.length == 5 ? cast.toString(args[4]) : null;
+
+		// an error thrown by the closure is passed on as it is
+		PageException[] failure = new PageException[1];
+		try {
+			String key = CommonUtil.toCacheKey(pc, cast.toString(args[0]));
+			DynamoDBCache cache = CommonUtil.getDynamoDBCache(pc, eng, cacheName);
+			return cache.getOrLoad(key, () -> {
+				try {
+					return loader.call(pc, new Object[0], true);
+				}
+				catch (PageException pe) {
+					failure[0] = pe;
+					throw pe;
+				}
+			}, idle, until);
+		}
+		catch (Exception e) {
+			if (failure[0] != null) throw failure[0];
+			throw cast.toPageException(e);
+		}
+	}
+}
@@ -0,0 +1,58 @@
+package org.lucee.extension.aws.dynamodb;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.lucee.extension.aws.dynamodb.util.CommonUtil;
+
+import lucee.loader.engine.CFMLEngine;
+import lucee.loader.engine.CFMLEngineFactory;
+import lucee.runtime.PageContext;
+import lucee.runtime.exp.PageException;
+import lucee.runtime.ext.function.BIF;
+import lucee.runtime.ext.function.Function;
+import lucee.runtime.util.Cast;
+
+/**
+ * stores an entry with tags, all entries of a tag can be removed at once with
+ * DynamoDBCacheRemoveByTag
+ */
+public class DynamoDBCachePut extends BIF implements Function {
+
+	private static final long serialVersionUID = 3694729101830465277L;
+
+	@Override
+	public Object invoke(PageContext pc, Object[] args) throws PageException {
+		CFMLEngine eng = CFMLEngineFactory.getInstance();
+		Cast cast = eng.getCastUtil();
+
+		if (args.length < 2 || args.length > 6) {
+			throw eng.getExceptionUtil().createFunctionException(pc, "DynamoDBCachePut", 2, 6, args.length);
+		}
+
+		Long until = args.length > 3 && args[3] != null ? cast.toTimespan(args[3]).getMillis() : null;
+		Long idle = args.length > 4 && args[4] != null ? cast.toTimespan(args[4]).getMillis() : null;
+		// if no cache name is provided it will pick the default cache
+		String cacheName = args.length == 6 ? cast.toString(args[5]) : null;
+
+		try {
+			String key = CommonUtil.toCacheKey(pc, cast.toString(args[0]));
+			List<String> tags = new ArrayList<>();
+			if (args.length > 2 && args[2] != null) {
+				// an array of tags or a comma separated list
+				Iterable<?> raw = eng.getDecisionUtil().isArray(args[2]) ? cast.toList(args[2]) : List.of(cast.toString(args[2]).split(","));
+				for (Object tag: raw) {
+					String str = cast.toString(tag).trim();
+					if (!str.isEmpty()) tags.add(CommonUtil.toCacheKey(pc, str));
+				}
+			}
+
+			DynamoDBCache cache = CommonUtil.getDynamoDBCache(pc, eng, cacheName);
+			cache.put(key, args[1], idle, until, tags);
+			return null;
+		}
+		catch (Exception e) {
+			throw cast.toPageException(e);
+		}
+	}
+}
@@ -0,0 +1,59 @@
+package org.lucee.extension.aws.dynamodb;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.lucee.extension.aws.dynamodb.util.CommonUtil;
+
+import lucee.loader.engine.CFMLEngine;
+import lucee.loader.engine.CFMLEngineFactory;
+import lucee.runtime.PageContext;
+import lucee.runtime.exp.PageException;
+import lucee.runtime.ext.function.BIF;
+import lucee.runtime.ext.function.Function;
+import lucee.runtime.type.Collection.Key;
+import lucee.runtime.type.Struct;
+import lucee.runtime.util.Cast;
+
+/**
+ * stores multiple entries at once, written with BatchWriteItem instead of one request per key
+ */
+public class DynamoDBCachePutAll extends BIF implements Function {
+
+	private static final long serialVersionUID = 2201877062944105618L;
+
+	@Override
+	public Object invoke(PageContext pc, Object[] args) throws PageException {
+		CFMLEngine eng = CFMLEngineFactory.getInstance();
+		Cast cast = eng.getCastUtil();
+
+		if (args.length < 1 || args.length > 4) {
+			throw eng.getExceptionUtil().createFunctionException(pc, "DynamoDBCachePutAll", 1, 4, args.length);
+		}
+
+		Long until = args.length > 1 && args[1] != null ? cast.toTimespan(args[1]).getMillis() : null;
+		Long idle = args.length > 2 && args[2] != null ? cast.toTimespan(args[2]).getMillis() : null;
+		// if no cache name is provided it will pick the default cache
+		String cacheName = args.length == 4 ? cast.toString(args[3]) : null;
+
+		try {
+			Struct values = cast.toStruct(args[0]);
+			Map<String, Object> entries = new LinkedHashMap<>();
+			Iterator<Entry<Key, Object>> it = values.entryIterator();
+			Entry<Key, Object> e;
+			while (it.hasNext()) {
+				e = it.next();
+				entries.put(CommonUtil.toCacheKey(pc, e.getKey().getString()), e.getValue());
+			}
+
+			DynamoDBCache cache = CommonUtil.getDynamoDBCache(pc, eng, cacheName);
+			cache.putAll(entries, idle, until);
+			return null;
+		}
+		catch (Exception ex) {
+			throw cast.toPageException(ex);
+		}
+	}
+}
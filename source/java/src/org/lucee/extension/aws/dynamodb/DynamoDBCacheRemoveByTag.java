@@ -0,0 +1,42 @@
+package org.lucee.extension.aws.dynamodb;
+
+import org.lucee.extension.aws.dynamodb.util.CommonUtil;
+
+import lucee.loader.engine.CFMLEngine;
+import lucee.loader.engine.CFMLEngineFactory;
+import lucee.runtime.PageContext;
+import lucee.runtime.exp.PageException;
+import lucee.runtime.ext.function.BIF;
+import lucee.runtime.ext.function.Function;
+import lucee.runtime.util.Cast;
+
+/**
+ * removes all entries stored with a tag (see DynamoDBCachePut), the members are read with a Query on
+ * the tag index instead of a scan
+ */
+public class DynamoDBCacheRemoveByTag extends BIF implements Function {
+
+	private static final long serialVersionUID = -1522980467370329176L;
+
+	@Override
+	public Object invoke(PageContext pc, Object[] args) throws PageException {
+		CFMLEngine eng = CFMLEngineFactory.getInstance();
+		Cast cast = eng.getCastUtil();
+
+		if (args.length < 1 || args.length > 2) {
+			throw eng.getExceptionUtil().createFunctionException(pc, "DynamoDBCacheRemoveByTag", 1, 2, args.length);
+		}
+
+		// if no cache name is provided it will pick the default cache
+		String cacheName = args.length == 2 ? cast.toString(args[1]) : null;
+
+		try {
+			String tag = CommonUtil.toCacheKey(pc, cast.toString(args[0]).trim());
+			DynamoDBCache cache = CommonUtil.getDynamoDBCache(pc, eng, cacheName);
+			return cache.removeByTag(tag);
+		}
+		catch (Exception e) {
+			throw cast.toPageException(e);
+		}
+	}
+}
@@ -0,0 +1,68 @@
+package org.lucee.extension.aws.dynamodb;
+
+import java.io.OutputStream;
+
+import org.lucee.extension.aws.dynamodb.util.CommonUtil;
+
+import lucee.loader.engine.CFMLEngine;
+import lucee.loader.engine.CFMLEngineFactory;
+import lucee.runtime.PageContext;
+import lucee.runtime.exp.PageException;
+import lucee.runtime.ext.function.BIF;
+import lucee.runtime.ext.function.Function;
+import lucee.runtime.type.UDF;
+import lucee.runtime.util.Cast;
+
+/**
+ * registers the loader used to refresh entries in their stale grace period in the background. The
+ * loader is called with a copy of the page context of the request that read the stale entry.
+ */
+public class DynamoDBCacheSetLoader extends BIF implements Function {
+
+	private static final long serialVersionUID = 1873356602285041926L;
+
+	@Override
+	public Object invoke(PageContext pc, Object[] args) throws PageException {
+		CFMLEngine eng = CFMLEngineFactory.getInstance();
+		Cast cast = eng.getCastUtil();
+
+		if (args.length < 1 || args.length > 2) {
+			throw eng.getExceptionUtil().createFunctionException(pc, "DynamoDBCacheSetLoader", 1, 2, args.length);
+		}
+		if (args[0] != null && !(args[0] instanceof UDF)) {
+			throw eng.getExceptionUtil().createApplicationException("first argument of function DynamoDBCacheSetLoader needs to be a closure or function");
+		}
+		UDF loader = (UDF) args[0];
+		// if no cache name is provided it will pick the default cache
+		String cacheName = args.length == 2 ? cast.toString(args[1]) : null;
+
+		try {
+			DynamoDBCache cache = CommonUtil.getDynamoDBCache(pc, eng, cacheName);
+			if (loader == null) {
+				cache.setLoader(null);
+				return null;
+			}
+			cache.setLoader(key -> {
+				// the copy is made while the request reading the stale entry is still running
+				PageContext current = eng.getThreadPageContext();
+				if (current == null) {
+					throw eng.getExceptionUtil().createApplicationException("there is no request to run the loader of cache [" + cacheName + "] with");
+				}
+				PageContext child = eng.getThreadUtil().clonePageContext(current, OutputStream.nullOutputStream(), false, false, false);
+				return () -> {
+					eng.registerThreadPageContext(child);
+					try {
+						return loader.call(child, new Object[] { key }, true);
+					}
+					finally {
+						eng.releasePageContext(child, true);
+					}
+				};
+			});
+			return null;
+		}
+		catch (Exception e) {
+			throw cast.toPageException(e);
+		}
+	}
+}
@@ -0,0 +1,78 @@
+package org.lucee.extension.aws.dynamodb;
+
+import java.time.Duration;
+
+import lucee.loader.engine.CFMLEngineFactory;
+import lucee.runtime.type.Struct;
+import software.amazon.awssdk.http.apache.ApacheHttpClient;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
+
+/**
+ * settings of the HTTP layer (connection pool and timeouts), applied to the blocking and the non
+ * blocking client. All times are in milliseconds, the defaults are the ones of the AWS SDK. A max
+ * idle time of 0 keeps the default of each HTTP client, they differ (60s for Apache, 5s for Netty).
+ */
+final class HttpSettings {
+
+	private final int maxConnections;
+	private final long connectionAcquisitionTimeout;
+	private final long connectionTimeToLive;
+	private final long connectionMaxIdleTime;
+	private final boolean useIdleConnectionReaper;
+	private final boolean tcpKeepAlive;
+	private final long socketTimeout;
+	private final long connectionTimeout;
+
+	public HttpSettings(int maxConnections, long connectionAcquisitionTimeout, long connectionTimeToLive, long connectionMaxIdleTime, boolean useIdleConnectionReaper,
+			boolean tcpKeepAlive, long socketTimeout, long connectionTimeout) {
+		this.maxConnections = maxConnections;
+		this.connectionAcquisitionTimeout = connectionAcquisitionTimeout;
+		this.connectionTimeToLive = connectionTimeToLive;
+		this.connectionMaxIdleTime = connectionMaxIdleTime;
+		this.useIdleConnectionReaper = useIdleConnectionReaper;
+		this.tcpKeepAlive = tcpKeepAlive;
+		this.socketTimeout = socketTimeout;
+		this.connectionTimeout = connectionTimeout;
+	}
+
+	public ApacheHttpClient.Builder apache() {
+		ApacheHttpClient.Builder builder = ApacheHttpClient.builder().maxConnections(maxConnections)
+				.connectionAcquisitionTimeout(Duration.ofMillis(connectionAcquisitionTimeout)).useIdleConnectionReaper(useIdleConnectionReaper).tcpKeepAlive(tcpKeepAlive)
+				.socketTimeout(Duration.ofMillis(socketTimeout)).connectionTimeout(Duration.ofMillis(connectionTimeout));
+		if (connectionMaxIdleTime > 0) builder.connectionMaxIdleTime(Duration.ofMillis(connectionMaxIdleTime));
+		// 0 means connections live as long as they are usable
+		if (connectionTimeToLive > 0) builder.connectionTimeToLive(Duration.ofMillis(connectionTimeToLive));
+		return builder;
+	}
+
+	public NettyNioAsyncHttpClient.Builder netty() {
+		NettyNioAsyncHttpClient.Builder builder = NettyNioAsyncHttpClient.builder().maxConcurrency(maxConnections)
+				.connectionAcquisitionTimeout(Duration.ofMillis(connectionAcquisitionTimeout)).useIdleConnectionReaper(useIdleConnectionReaper).tcpKeepAlive(tcpKeepAlive)
+				.readTimeout(Duration.ofMillis(socketTimeout)).writeTimeout(Duration.ofMillis(socketTimeout)).connectionTimeout(Duration.ofMillis(connectionTimeout));
+		if (connectionMaxIdleTime > 0) builder.connectionMaxIdleTime(Duration.ofMillis(connectionMaxIdleTime));
+		if (connectionTimeToLive > 0) builder.connectionTimeToLive(Duration.ofMillis(connectionTimeToLive));
+		return builder;
+	}
+
+	/**
+	 * caches with different settings need different clients, so the settings are part of the key of
+	 * the client pool
+	 */
+	public String key() {
+		return maxConnections + ":" + connectionAcquisitionTimeout + ":" + connectionTimeToLive + ":" + connectionMaxIdleTime + ":" + useIdleConnectionReaper + ":"
+				+ tcpKeepAlive + ":" + socketTimeout + ":" + connectionTimeout;
+	}
+
+	public Struct getInfo() {
+		Struct info = CFMLEngineFactory.getInstance().getCreationUtil().createStruct(Struct.TYPE_LINKED);
+		info.setEL("maxConnections", maxConnections);
+		info.setEL("connectionAcquisitionTimeout", connectionAcquisitionTimeout);
+		info.setEL("connectionTimeToLive", connectionTimeToLive);
+		info.setEL("connectionMaxIdleTime", connectionMaxIdleTime);
+		info.setEL("useIdleConnectionReaper", useIdleConnectionReaper);
+		info.setEL("tcpKeepAlive", tcpKeepAlive);
+		info.setEL("socketTimeout", socketTimeout);
+		info.setEL("connectionTimeout", connectionTimeout);
+		return info;
+	}
+}
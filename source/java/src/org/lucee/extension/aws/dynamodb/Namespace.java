@@ -0,0 +1,122 @@
+package org.lucee.extension.aws.dynamodb;
+
+import java.util.Map;
+import java.util.function.Supplier;
+
+import lucee.loader.engine.CFMLEngineFactory;
+import lucee.runtime.type.Struct;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.ReturnValue;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+
+/**
+ * prefixes every key with the current generation of the cache ("{generation}:{key}"), clearing the
+ * cache is done by increasing the generation, so all existing items become unreachable at once. The
+ * generation is stored in a control item in the table and read again by every node in an interval.
+ */
+final class Namespace {
+
+	public static final String CONTROL_KEY = "__namespace__";
+	private static final String SEPARATOR = ":";
+
+	private final Supplier<DynamoDbClient> client;
+	private final String tableName;
+	private final Map<String, AttributeValue> controlKey;
+	private final long refreshInterval;
+
+	private volatile long generation = -1;
+	private volatile String prefix;
+
+	public Namespace(Supplier<DynamoDbClient> client, String tableName, Map<String, AttributeValue> controlKey, long refreshInterval) {
+		this.client = client;
+		this.tableName = tableName;
+		this.controlKey = controlKey;
+		this.refreshInterval = refreshInterval;
+	}
+
+	/**
+	 * reads the current generation from the table, returns true if it has changed (the cache was
+	 * cleared by an other node)
+	 */
+	public boolean refresh() {
+		Map<String, AttributeValue> item = client.get()
+				.getItem(GetItemRequest.builder().tableName(tableName).key(controlKey).consistentRead(true).build()).item();
+		AttributeValue gen = item == null ? null : item.get("generation");
+		return set(gen == null ? 0 : Long.parseLong(gen.n()));
+	}
+
+	/**
+	 * increases the generation, returns the previous one
+	 */
+	public long next() {
+		UpdateItemRequest request = UpdateItemRequest.builder().tableName(tableName).key(controlKey).updateExpression("ADD #gen :one SET #internal = :true")
+				.expressionAttributeNames(Map.of("#gen", "generation", "#internal", "internal"))
+				.expressionAttributeValues(Map.of(":one", AttributeValue.builder().n("1").build(), ":true", AttributeValue.builder().bool(true).build()))
+				.returnValues(ReturnValue.UPDATED_NEW).build();
+		long gen = Long.parseLong(client.get().updateItem(request).attributes().get("generation").n());
+		set(gen);
+		return gen - 1;
+	}
+
+	public String prefix() {
+		return prefix;
+	}
+
+	public long generation() {
+		return generation;
+	}
+
+	public long getRefreshInterval() {
+		return refreshInterval;
+	}
+
+	/**
+	 * returns the key without the prefix, null if the stored key is not part of the current generation
+	 */
+	public String toKey(String storedKey) {
+		String p = prefix;
+		if (storedKey == null || !storedKey.startsWith(p)) return null;
+		return storedKey.substring(p.length());
+	}
+
+	/**
+	 * returns the generation a stored key belongs to, -1 if it is not a key with a generation prefix
+	 */
+	public static long generationOf(String storedKey) {
+		int index = storedKey == null ? -1 : storedKey.indexOf(SEPARATOR);
+		if (index < 1) return -1;
+		long gen = 0;
+		for (int i = 0; i < index; i++) {
+			char c = storedKey.charAt(i);
+			if (c < '0' || c > '9' || i > 18) return -1;
+			gen = gen * 10 + (c - '0');
+		}
+		return gen;
+	}
+
+	/**
+	 * returns the length of the generation prefix of a stored key, 0 if it has none
+	 */
+	public static int prefixLength(String storedKey) {
+		if (generationOf(storedKey) == -1) return 0;
+		return storedKey.indexOf(SEPARATOR) + SEPARATOR.length();
+	}
+
+	public Struct getInfo() {
+		Struct info = CFMLEngineFactory.getInstance().getCreationUtil().createStruct(Struct.TYPE_LINKED);
+		info.setEL("generation", generation);
+		info.setEL("refreshInterval", refreshInterval);
+		return info;
+	}
+
+	private synchronized boolean set(long gen) {
+		// a generation never goes back
+		if (gen <= generation) return false;
+		boolean changed = generation != -1;
+		generation = gen;
+		prefix = gen + SEPARATOR;
+		return changed;
+	}
+}
@@ -0,0 +1,359 @@
+package org.lucee.extension.aws.dynamodb;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.lucee.extension.aws.dynamodb.util.Coder;
+
+import lucee.loader.engine.CFMLEngineFactory;
+import lucee.runtime.type.Struct;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+/**
+ * bounded on-heap tier in front of the DynamoDB table. It holds the raw items (not the decoded
+ * values), so every hit still hands out its own copy of the value like a read from the table does.
+ * Supports a plain LRU policy and W-TinyLFU (small LRU admission window in front of a main LRU
+ * region guarded by a frequency sketch). The keys are spread over segments with their own lock and
+ * their own share of the bounds, so concurrent reads of different keys rarely wait for each other.
+ */
+final class NearCache {
+
+	public static final String POLICY_LRU = "lru";
+	public static final String POLICY_TINYLFU = "tinylfu";
+
+	private static final int STRIPES = 64;
+	private static final int MAX_SEGMENTS = 16;
+	// small bounds are not split further, so a segment is not too small to keep its hot keys
+	private static final int MIN_SEGMENT_ENTRIES = 64;
+	private static final long MIN_SEGMENT_BYTES = 64 * 1024;
+
+	private final int maxEntries;
+	private final long maxBytes;
+	private final long timeToLive;
+	private final String policy;
+	private final Segment[] segments;
+
+	// every local modification of a key bumps the version of its stripe, a read that was started before
+	// that modification is not allowed to populate the near cache with what it got from the table
+	private final AtomicLongArray versions = new AtomicLongArray(STRIPES);
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+
+	public NearCache(int maxEntries, long maxBytes, long timeToLive, String policy) {
+		this.maxEntries = maxEntries;
+		this.maxBytes = maxBytes;
+		this.timeToLive = timeToLive;
+		this.policy = policy;
+
+		int count = 1;
+		while (count < MAX_SEGMENTS && (maxEntries == 0 || maxEntries / (count * 2) >= MIN_SEGMENT_ENTRIES)
+				&& (maxBytes == 0 || maxBytes / (count * 2) >= MIN_SEGMENT_BYTES)) {
+			count *= 2;
+		}
+		segments = new Segment[count];
+		for (int i = 0; i < count; i++) {
+			segments[i] = new Segment(maxEntries == 0 ? 0 : Math.max(1, (maxEntries + count - 1) / count), maxBytes == 0 ? 0 : Math.max(1, (maxBytes + count - 1) / count),
+					POLICY_TINYLFU.equals(policy));
+		}
+	}
+
+	public long version(String key) {
+		return versions.get(stripe(key));
+	}
+
+	/**
+	 * returns the cached item or null if there is none or it is no longer valid
+	 */
+	public Map<String, AttributeValue> get(String key) {
+		Map<String, AttributeValue> item = segment(key).get(key);
+		if (item == null) misses.increment();
+		else hits.increment();
+		return item;
+	}
+
+	/**
+	 * stores an item read from the table, the given version needs to be taken with
+	 * {@link #version(String)} before the item was read
+	 */
+	public void put(String key, Map<String, AttributeValue> item, long version) {
+		long now = System.currentTimeMillis();
+		long expires = now + timeToLive;
+		AttributeValue ttl = item.get("ttl");
+		if (ttl != null && ttl.n() != null) {
+			expires = Math.min(expires, Long.parseLong(ttl.n()) * 1000L);
+		}
+		// with a stale grace period the ttl is later than the expiration of the entry
+		AttributeValue logical = item.get("expires");
+		if (logical != null && logical.n() != null) {
+			expires = Math.min(expires, Long.parseLong(logical.n()));
+		}
+		if (expires <= now) return;
+
+		segment(key).put(key, item, version, expires);
+	}
+
+	public void invalidate(String key) {
+		versions.incrementAndGet(stripe(key));
+		segment(key).invalidate(key);
+	}
+
+	public void clear() {
+		for (int i = 0; i < STRIPES; i++) {
+			versions.incrementAndGet(i);
+		}
+		for (Segment segment: segments) {
+			segment.clear();
+		}
+	}
+
+	public Struct getInfo() {
+		int size = 0;
+		long bytes = 0;
+		for (Segment segment: segments) {
+			synchronized (segment) {
+				size += segment.entries();
+				bytes += segment.bytes;
+			}
+		}
+		Struct info = CFMLEngineFactory.getInstance().getCreationUtil().createStruct(Struct.TYPE_LINKED);
+		info.setEL("policy", policy);
+		info.setEL("maxEntries", maxEntries);
+		info.setEL("maxBytes", maxBytes);
+		info.setEL("timeToLive", timeToLive);
+		info.setEL("segments", segments.length);
+		info.setEL("size", size);
+		info.setEL("bytes", bytes);
+		info.setEL("hits", hits.sum());
+		info.setEL("misses", misses.sum());
+		info.setEL("evictions", evictions.sum());
+		return info;
+	}
+
+	private Segment segment(String key) {
+		return segments[(FrequencySketch.spread(key.hashCode()) >>> 16) & (segments.length - 1)];
+	}
+
+	/**
+	 * one part of the near cache with its own bounds, every access is guarded by the segment itself
+	 */
+	private final class Segment {
+		private final int maxEntries;
+		private final long maxBytes;
+
+		private final LinkedHashMap<String, Node> main = new LinkedHashMap<>(16, 0.75f, true);
+		private final LinkedHashMap<String, Node> window;
+		private final FrequencySketch sketch;
+		private final int windowEntries;
+		private final long windowMaxBytes;
+
+		private long bytes;
+		private long windowBytes;
+
+		private Segment(int maxEntries, long maxBytes, boolean tinyLfu) {
+			this.maxEntries = maxEntries;
+			this.maxBytes = maxBytes;
+
+			if (tinyLfu) {
+				window = new LinkedHashMap<>(16, 0.75f, true);
+				sketch = new FrequencySketch(maxEntries);
+				windowEntries = Math.max(1, maxEntries / 100);
+				windowMaxBytes = Math.max(1, maxBytes / 100);
+			}
+			else {
+				window = null;
+				sketch = null;
+				windowEntries = 0;
+				windowMaxBytes = 0;
+			}
+		}
+
+		private synchronized Map<String, AttributeValue> get(String key) {
+			if (sketch != null) sketch.increment(key);
+
+			Node node = window != null ? window.get(key) : null;
+			if (node == null) node = main.get(key);
+
+			if (node == null) return null;
+			if (node.expires <= System.currentTimeMillis()) {
+				remove(key);
+				return null;
+			}
+			return node.item;
+		}
+
+		private synchronized void put(String key, Map<String, AttributeValue> item, long version, long expires) {
+			// checked while holding the lock, so an invalidation either happened before or removes it after
+			if (versions.get(stripe(key)) != version) return;
+
+			long size = size(key, item);
+			if (maxBytes > 0 && size > maxBytes) return;
+
+			remove(key);
+			Node node = new Node(key, item, expires, size);
+			bytes += size;
+
+			if (window == null) {
+				main.put(key, node);
+				while (overflow() && !main.isEmpty()) {
+					evict(main, eldest(main));
+				}
+				return;
+			}
+
+			// W-TinyLFU, new entries enter the window, what falls out of it has to compete with the main
+			// region's victim
+			window.put(key, node);
+			windowBytes += size;
+			while ((maxEntries > 0 && window.size() > windowEntries) || (maxBytes > 0 && windowBytes > windowMaxBytes)) {
+				Node candidate = eldest(window);
+				window.remove(candidate.key);
+				windowBytes -= candidate.size;
+				main.put(candidate.key, candidate);
+
+				while (overflow() && !main.isEmpty()) {
+					Node victim = eldest(main);
+					if (victim != candidate && main.containsKey(candidate.key) && sketch.frequency(candidate.key) <= sketch.frequency(victim.key)) {
+						evict(main, candidate);
+					}
+					else {
+						evict(main, victim);
+					}
+				}
+			}
+		}
+
+		private synchronized void invalidate(String key) {
+			remove(key);
+		}
+
+		private synchronized void clear() {
+			main.clear();
+			if (window != null) window.clear();
+			bytes = 0;
+			windowBytes = 0;
+		}
+
+		private int entries() {
+			return main.size() + (window == null ? 0 : window.size());
+		}
+
+		private boolean overflow() {
+			return (maxEntries > 0 && entries() > maxEntries) || (maxBytes > 0 && bytes > maxBytes);
+		}
+
+		private void evict(LinkedHashMap<String, Node> region, Node node) {
+			region.remove(node.key);
+			bytes -= node.size;
+			evictions.increment();
+		}
+
+		private void remove(String key) {
+			Node node = main.remove(key);
+			if (node == null && window != null) {
+				node = window.remove(key);
+				if (node != null) windowBytes -= node.size;
+			}
+			if (node != null) bytes -= node.size;
+		}
+	}
+
+	private static Node eldest(LinkedHashMap<String, Node> region) {
+		Iterator<Node> it = region.values().iterator();
+		return it.next();
+	}
+
+	private static int stripe(String key) {
+		return (key.hashCode() & 0x7fffffff) % STRIPES;
+	}
+
+	private static long size(String key, Map<String, AttributeValue> item) {
+		long size = key.length();
+		for (Map.Entry<String, AttributeValue> e: item.entrySet()) {
+			size += e.getKey().length() + Coder.sizeOf(e.getValue());
+		}
+		return size;
+	}
+
+	private static final class Node {
+		private final String key;
+		private final Map<String, AttributeValue> item;
+		private final long expires;
+		private final long size;
+
+		private Node(String key, Map<String, AttributeValue> item, long expires, long size) {
+			this.key = key;
+			this.item = item;
+			this.expires = expires;
+			this.size = size;
+		}
+	}
+
+	/**
+	 * count-min sketch with 4 bit counters that are halved periodically, so the popularity of a key
+	 * ages out over time
+	 */
+	private static final class FrequencySketch {
+		private static final int[] SEEDS = new int[] { 0x97cb3127, 0xb66cf4ed, 0x7ed55d16, 0x165667b1 };
+		private static final int MAX = 15;
+
+		private final int[][] table;
+		private final int mask;
+		private final int sampleSize;
+		private int additions;
+
+		private FrequencySketch(int expectedEntries) {
+			int width = Integer.highestOneBit(Math.min(Math.max(expectedEntries, 1024), 1 << 22) - 1) << 1;
+			table = new int[SEEDS.length][width];
+			mask = width - 1;
+			sampleSize = width * 10;
+		}
+
+		private void increment(String key) {
+			int hash = spread(key.hashCode());
+			boolean added = false;
+			for (int i = 0; i < SEEDS.length; i++) {
+				int index = index(hash, i);
+				if (table[i][index] < MAX) {
+					table[i][index]++;
+					added = true;
+				}
+			}
+			if (added && ++additions >= sampleSize) reset();
+		}
+
+		private int frequency(String key) {
+			int hash = spread(key.hashCode());
+			int frequency = MAX;
+			for (int i = 0; i < SEEDS.length; i++) {
+				frequency = Math.min(frequency, table[i][index(hash, i)]);
+			}
+			return frequency;
+		}
+
+		private void reset() {
+			for (int[] row: table) {
+				for (int i = 0; i < row.length; i++) {
+					row[i] >>>= 1;
+				}
+			}
+			additions /= 2;
+		}
+
+		private int index(int hash, int i) {
+			int h = hash * SEEDS[i];
+			h += h >>> 16;
+			return h & mask;
+		}
+
+		private static int spread(int x) {
+			x = ((x >>> 16) ^ x) * 0x45d9f3b;
+			x = ((x >>> 16) ^ x) * 0x45d9f3b;
+			return (x >>> 16) ^ x;
+		}
+	}
+}
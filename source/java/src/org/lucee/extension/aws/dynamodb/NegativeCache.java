@@ -0,0 +1,97 @@
+package org.lucee.extension.aws.dynamodb;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import lucee.loader.engine.CFMLEngineFactory;
+import lucee.runtime.type.Struct;
+
+/**
+ * remembers keys recently found missing in the table for a short time, so repeated lookups of keys
+ * that do not exist do not all end up as a GetItem request
+ */
+final class NegativeCache {
+
+	private static final int STRIPES = 64;
+
+	private final long timeout;
+	private final int maxEntries;
+	private final Map<String, Long> misses = new ConcurrentHashMap<>();
+
+	// same as with the near cache, a miss read before a local modification of the key is not recorded
+	private final AtomicLongArray versions = new AtomicLongArray(STRIPES);
+	private final LongAdder hits = new LongAdder();
+
+	public NegativeCache(long timeout, int maxEntries) {
+		this.timeout = timeout;
+		this.maxEntries = maxEntries;
+	}
+
+	public long version(String key) {
+		return versions.get(stripe(key));
+	}
+
+	/**
+	 * returns true if the key is known to be missing in the table
+	 */
+	public boolean contains(String key) {
+		Long expires = misses.get(key);
+		if (expires == null) return false;
+		if (expires <= System.currentTimeMillis()) {
+			misses.remove(key, expires);
+			return false;
+		}
+		hits.increment();
+		return true;
+	}
+
+	/**
+	 * records a miss, the given version needs to be taken with {@link #version(String)} before the
+	 * table was asked for the key
+	 */
+	public void put(String key, long version) {
+		if (misses.size() >= maxEntries) purge();
+
+		final int stripe = stripe(key);
+		final Long expires = System.currentTimeMillis() + timeout;
+		misses.compute(key, (k, old) -> versions.get(stripe) == version ? expires : old);
+	}
+
+	public void invalidate(String key) {
+		versions.incrementAndGet(stripe(key));
+		misses.remove(key);
+	}
+
+	public void clear() {
+		for (int i = 0; i < STRIPES; i++) {
+			versions.incrementAndGet(i);
+		}
+		misses.clear();
+	}
+
+	public Struct getInfo() {
+		Struct info = CFMLEngineFactory.getInstance().getCreationUtil().createStruct(Struct.TYPE_LINKED);
+		info.setEL("timeout", timeout);
+		info.setEL("maxEntries", maxEntries);
+		info.setEL("size", misses.size());
+		info.setEL("hits", hits.sum());
+		return info;
+	}
+
+	private void purge() {
+		long now = System.currentTimeMillis();
+		Iterator<Long> it = misses.values().iterator();
+		while (it.hasNext()) {
+			if (it.next() <= now) it.remove();
+		}
+		// still full of valid entries, start over rather than growing unbounded
+		if (misses.size() >= maxEntries) misses.clear();
+	}
+
+	private static int stripe(String key) {
+		return (key.hashCode() & 0x7fffffff) % STRIPES;
+	}
+}
@@ -0,0 +1,77 @@
+package org.lucee.extension.aws.dynamodb;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import lucee.loader.engine.CFMLEngineFactory;
+import lucee.runtime.type.Struct;
+import software.amazon.awssdk.http.HttpMetric;
+import software.amazon.awssdk.metrics.MetricCollection;
+import software.amazon.awssdk.metrics.MetricPublisher;
+
+/**
+ * collects the occupancy of the HTTP connection pool of a client, as reported by the SDK with every
+ * request (the numbers are the ones at the time a connection was acquired)
+ */
+final class PoolMetrics implements MetricPublisher {
+
+	private volatile int maxConcurrency;
+	private volatile int leased;
+	private volatile int available;
+	private volatile int pending;
+	private volatile int maxLeased;
+	private volatile int maxPending;
+
+	private final LongAdder acquires = new LongAdder();
+	private final LongAdder acquireTime = new LongAdder();
+	private volatile long maxAcquireTime;
+
+	@Override
+	public void publish(MetricCollection metrics) {
+		// the HTTP metrics are part of the collection of every attempt
+		List<Integer> values = metrics.metricValues(HttpMetric.LEASED_CONCURRENCY);
+		if (!values.isEmpty()) {
+			int l = values.get(0);
+			leased = l;
+			if (l > maxLeased) maxLeased = l;
+			available = first(metrics.metricValues(HttpMetric.AVAILABLE_CONCURRENCY), available);
+			maxConcurrency = first(metrics.metricValues(HttpMetric.MAX_CONCURRENCY), maxConcurrency);
+			int p = first(metrics.metricValues(HttpMetric.PENDING_CONCURRENCY_ACQUIRES), pending);
+			pending = p;
+			if (p > maxPending) maxPending = p;
+		}
+		for (Duration d: metrics.metricValues(HttpMetric.CONCURRENCY_ACQUIRE_DURATION)) {
+			long nanos = d.toNanos();
+			acquires.increment();
+			acquireTime.add(nanos);
+			if (nanos > maxAcquireTime) maxAcquireTime = nanos;
+		}
+		for (MetricCollection child: metrics.children()) {
+			publish(child);
+		}
+	}
+
+	@Override
+	public void close() {
+	}
+
+	public Struct getInfo() {
+		Struct info = CFMLEngineFactory.getInstance().getCreationUtil().createStruct(Struct.TYPE_LINKED);
+		long count = acquires.sum();
+		info.setEL("maxConcurrency", maxConcurrency);
+		info.setEL("leased", leased);
+		info.setEL("available", available);
+		info.setEL("pending", pending);
+		info.setEL("maxLeased", maxLeased);
+		info.setEL("maxPending", maxPending);
+		info.setEL("acquires", count);
+		info.setEL("avgAcquireLatency", count == 0 ? 0D : acquireTime.sum() / count / 1000000D);
+		info.setEL("maxAcquireLatency", maxAcquireTime / 1000000D);
+		return info;
+	}
+
+	private static int first(List<Integer> values, int defaultValue) {
+		return values.isEmpty() ? defaultValue : values.get(0);
+	}
+}
@@ -0,0 +1,125 @@
+package org.lucee.extension.aws.dynamodb;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import lucee.loader.engine.CFMLEngineFactory;
+import lucee.runtime.exp.PageException;
+import lucee.runtime.type.Struct;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+/**
+ * collects concurrent single key reads for a short window and loads them with one batch request.
+ * The first caller of a batch waits for the window and then executes the batch on its own thread,
+ * unless the batch was filled up and executed by an other caller before.
+ */
+final class ReadBatcher {
+
+	private final long windowNanos;
+	private final int maxSize;
+	private final Loader loader;
+
+	private Batch current = new Batch();
+
+	private final LongAdder batches = new LongAdder();
+	private final LongAdder keys = new LongAdder();
+
+	public ReadBatcher(long windowNanos, int maxSize, Loader loader) {
+		this.windowNanos = windowNanos;
+		this.maxSize = maxSize;
+		this.loader = loader;
+	}
+
+	/**
+	 * returns the item for the given key or null if the table has no item for it
+	 */
+	public Map<String, AttributeValue> get(String key) throws PageException {
+		CompletableFuture<Map<String, AttributeValue>> future;
+		Batch lead = null;
+		Batch full = null;
+		synchronized (this) {
+			future = current.futures.get(key);
+			if (future == null) {
+				future = new CompletableFuture<>();
+				current.futures.put(key, future);
+				if (current.futures.size() >= maxSize) {
+					full = current;
+					current = new Batch();
+				}
+				else if (current.futures.size() == 1) {
+					lead = current;
+				}
+			}
+		}
+
+		if (full != null) {
+			execute(full);
+		}
+		else if (lead != null) {
+			LockSupport.parkNanos(windowNanos);
+			synchronized (this) {
+				// could already be executed because it got full in the meantime
+				if (current == lead) current = new Batch();
+				else lead = null;
+			}
+			if (lead != null) execute(lead);
+		}
+		return await(future);
+	}
+
+	public Struct getInfo() {
+		Struct info = CFMLEngineFactory.getInstance().getCreationUtil().createStruct(Struct.TYPE_LINKED);
+		info.setEL("window", windowNanos / 1000000D);
+		info.setEL("maxSize", maxSize);
+		info.setEL("batches", batches.sum());
+		info.setEL("keys", keys.sum());
+		return info;
+	}
+
+	private void execute(Batch batch) {
+		batches.increment();
+		keys.add(batch.futures.size());
+		try {
+			Map<String, Map<String, AttributeValue>> items = loader.load(new ArrayList<>(batch.futures.keySet()));
+			for (Entry<String, CompletableFuture<Map<String, AttributeValue>>> e: batch.futures.entrySet()) {
+				e.getValue().complete(items.get(e.getKey()));
+			}
+		}
+		catch (Exception ex) {
+			for (CompletableFuture<Map<String, AttributeValue>> f: batch.futures.values()) {
+				f.completeExceptionally(ex);
+			}
+		}
+	}
+
+	private static Map<String, AttributeValue> await(CompletableFuture<Map<String, AttributeValue>> future) throws PageException {
+		try {
+			return future.get();
+		}
+		catch (ExecutionException e) {
+			throw CFMLEngineFactory.getInstance().getCastUtil().toPageException(e.getCause());
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw CFMLEngineFactory.getInstance().getCastUtil().toPageException(e);
+		}
+	}
+
+	private static final class Batch {
+		private final Map<String, CompletableFuture<Map<String, AttributeValue>>> futures = new LinkedHashMap<>();
+	}
+
+	public interface Loader {
+		/**
+		 * loads the items for the given keys, keys without an item are simply not part of the result
+		 */
+		public Map<String, Map<String, AttributeValue>> load(List<String> keys) throws Exception;
+	}
+}
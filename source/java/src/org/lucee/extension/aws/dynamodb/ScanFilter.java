@@ -0,0 +1,117 @@
+package org.lucee.extension.aws.dynamodb;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import lucee.commons.io.cache.CacheKeyFilter;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
+
+/**
+ * FilterExpression for a scan, so only live items (and only the ones matching a wildcard filter)
+ * cross the network. The expression is only a pre selection, the items still need to be checked in
+ * the JVM with the filter itself (and for validity, the ttl in the table is in seconds).
+ */
+final class ScanFilter implements Consumer<ScanRequest.Builder> {
+
+	private final String expression;
+	private final Map<String, String> names = new HashMap<>();
+	private final Map<String, AttributeValue> values = new HashMap<>();
+	private final String projection;
+	private final String keyPrefix;
+
+	/**
+	 * @param primaryKeyName name of the key attribute
+	 * @param sortKeyName name of the sort key attribute (used as #sk by the projection), can be null
+	 * @param keyPrefix prefix all stored keys of interest start with (see {@link Namespace}), can be null
+	 * @param filter key filter, only pushed down when it is a wildcard filter, can be null. The wildcard
+	 *            filters of the core ignore the case, the pushed down expression only matches keys stored
+	 *            in lower case, upper case or as the pattern is written.
+	 * @param projection projection expression (using #pk, #sk, #ttl and #exp) or null for the whole item
+	 */
+	public ScanFilter(String primaryKeyName, String sortKeyName, String keyPrefix, CacheKeyFilter filter, String projection) {
+		this.projection = projection;
+		this.keyPrefix = keyPrefix == null ? "" : keyPrefix;
+		names.put("#ttl", "ttl"); // ttl is a reserved word
+		values.put(":now", AttributeValue.builder().n(Long.toString(System.currentTimeMillis() / 1000)).build());
+
+		StringBuilder sb = new StringBuilder("(attribute_not_exists(#ttl) OR #ttl > :now)");
+		String keyExpression = filter == null ? null : keyExpression(filter);
+		if (keyExpression == null && !this.keyPrefix.isEmpty()) keyExpression = "begins_with(#pk, " + value(this.keyPrefix) + ")";
+		if (keyExpression != null) sb.append(" AND (").append(keyExpression).append(')');
+		expression = sb.toString();
+		// DynamoDB rejects names that are not used
+		if (keyExpression != null || projection != null) names.put("#pk", primaryKeyName);
+		if (projection != null && sortKeyName != null) names.put("#sk", sortKeyName);
+		if (projection != null) names.put("#exp", "expires");
+	}
+
+	@Override
+	public void accept(ScanRequest.Builder builder) {
+		builder.filterExpression(expression).expressionAttributeNames(names).expressionAttributeValues(values);
+		if (projection != null) builder.projectionExpression(projection);
+	}
+
+	/**
+	 * translates the literal parts of the wildcard pattern into begins_with/contains conditions, the
+	 * pattern as it is, in lower and in upper case are accepted
+	 */
+	private String keyExpression(CacheKeyFilter filter) {
+		if (!CacheUtil.isWildCardFiler(filter) || CacheUtil.allowAll(filter)) return null;
+		String pattern = filter.toPattern().trim();
+
+		Set<String> variants = new LinkedHashSet<>();
+		variants.add(pattern);
+		variants.add(pattern.toLowerCase());
+		variants.add(pattern.toUpperCase());
+
+		List<String> alternatives = new ArrayList<>();
+		for (String variant: variants) {
+			String conditions = conditions(variant);
+			// a pattern without literal parts ("*") accepts every key
+			if (conditions == null) return null;
+			alternatives.add(conditions);
+		}
+		return String.join(" OR ", alternatives);
+	}
+
+	private String conditions(String pattern) {
+		List<String> conditions = new ArrayList<>();
+		StringBuilder literal = new StringBuilder();
+		boolean first = true;
+		boolean anchored = false;
+		for (int i = 0; i <= pattern.length(); i++) {
+			char c = i < pattern.length() ? pattern.charAt(i) : '*';
+			if (c != '*' && c != '?') {
+				literal.append(c);
+				continue;
+			}
+			if (literal.length() > 0) {
+				if (first && i == literal.length()) {
+					// the pattern starts with this literal, no wildcard in front of it
+					String name = value(keyPrefix + literal);
+					if (i == pattern.length()) conditions.add("#pk = " + name);
+					else conditions.add("begins_with(#pk, " + name + ")");
+					anchored = true;
+				}
+				else conditions.add("contains(#pk, " + value(literal.toString()) + ")");
+				literal.setLength(0);
+			}
+			first = false;
+		}
+		if (conditions.isEmpty()) return null;
+		if (!anchored && !keyPrefix.isEmpty()) conditions.add(0, "begins_with(#pk, " + value(keyPrefix) + ")");
+		return "(" + String.join(" AND ", conditions) + ")";
+	}
+
+	private String value(String str) {
+		String name = ":k" + values.size();
+		values.put(name, AttributeValue.builder().s(str).build());
+		return name;
+	}
+}
@@ -0,0 +1,110 @@
+package org.lucee.extension.aws.dynamodb;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import org.lucee.extension.aws.dynamodb.util.AsyncUtil;
+
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
+
+/**
+ * iterates over the items of a (parallel) scan one page at a time. Every segment has at most one
+ * page in flight and one page waiting to be consumed, the next page of a segment is requested as soon
+ * as its current page is taken, so memory use does not depend on the size of the table. Errors of the
+ * scan are thrown as {@link CompletionException} by {@link #hasNext()}/{@link #next()}.
+ */
+final class ScanIterator implements Iterator<Map<String, AttributeValue>> {
+
+	private final Supplier<DynamoDbAsyncClient> client;
+	private final String tableName;
+	private final Consumer<ScanRequest.Builder> request;
+	private final int segments;
+
+	private final BlockingQueue<Page> pages = new LinkedBlockingQueue<>();
+	private int running;
+	private Iterator<Map<String, AttributeValue>> current = Collections.emptyIterator();
+
+	/**
+	 * @param request optional callback to add to every scan request (projection, filter expression)
+	 */
+	public ScanIterator(Supplier<DynamoDbAsyncClient> client, String tableName, Consumer<ScanRequest.Builder> request, int segments) {
+		this.client = client;
+		this.tableName = tableName;
+		this.request = request;
+		this.segments = Math.max(1, segments);
+		for (int i = 0; i < this.segments; i++) {
+			fetch(i, null);
+		}
+		running = this.segments;
+	}
+
+	@Override
+	public boolean hasNext() {
+		while (!current.hasNext()) {
+			if (running == 0) return false;
+			Page page;
+			try {
+				page = pages.take();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new CompletionException(e);
+			}
+			if (page.error != null) {
+				running = 0;
+				throw page.error instanceof CompletionException ? (CompletionException) page.error : new CompletionException(page.error);
+			}
+			if (page.lastEvaluatedKey == null || page.lastEvaluatedKey.isEmpty()) running--;
+			else fetch(page.segment, page.lastEvaluatedKey);
+			current = page.items.iterator();
+		}
+		return true;
+	}
+
+	@Override
+	public Map<String, AttributeValue> next() {
+		if (!hasNext()) throw new NoSuchElementException();
+		return current.next();
+	}
+
+	private void fetch(int segment, Map<String, AttributeValue> exclusiveStartKey) {
+		ScanRequest.Builder builder = ScanRequest.builder().tableName(tableName);
+		if (segments > 1) builder.segment(segment).totalSegments(segments);
+		if (exclusiveStartKey != null) builder.exclusiveStartKey(exclusiveStartKey);
+		if (request != null) request.accept(builder);
+
+		try {
+			client.get().scan(builder.build()).whenComplete((response, t) -> {
+				if (t != null) pages.add(new Page(segment, null, null, AsyncUtil.unwrap(t)));
+				else pages.add(new Page(segment, response.items(), response.lastEvaluatedKey(), null));
+			});
+		}
+		catch (Exception e) {
+			pages.add(new Page(segment, null, null, e));
+		}
+	}
+
+	private static final class Page {
+		private final int segment;
+		private final List<Map<String, AttributeValue>> items;
+		private final Map<String, AttributeValue> lastEvaluatedKey;
+		private final Throwable error;
+
+		private Page(int segment, List<Map<String, AttributeValue>> items, Map<String, AttributeValue> lastEvaluatedKey, Throwable error) {
+			this.segment = segment;
+			this.items = items;
+			this.lastEvaluatedKey = lastEvaluatedKey;
+			this.error = error;
+		}
+	}
+}
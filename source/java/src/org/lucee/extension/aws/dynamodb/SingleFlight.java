@@ -0,0 +1,85 @@
+package org.lucee.extension.aws.dynamodb;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+import lucee.loader.engine.CFMLEngineFactory;
+import lucee.runtime.exp.PageException;
+
+/**
+ * makes concurrent calls for the same key share one execution, the first caller executes the call,
+ * all others that come in while it is running wait for its result. A call for a key that is made by
+ * the call for that same key (on the thread executing it) fails, waiting for itself would never end.
+ */
+final class SingleFlight<V> {
+
+	private final ConcurrentHashMap<String, Flight<V>> calls = new ConcurrentHashMap<>();
+	private final LongAdder shared = new LongAdder();
+
+	public V execute(String key, Call<V> call) throws PageException {
+		Flight<V> future = new Flight<>(Thread.currentThread());
+		Flight<V> existing = calls.putIfAbsent(key, future);
+		if (existing != null) {
+			if (existing.owner == Thread.currentThread()) {
+				throw CFMLEngineFactory.getInstance().getExceptionUtil()
+						.createApplicationException("recursive call for key [" + key + "], the call for that key is already running on this thread and would wait for itself");
+			}
+			shared.increment();
+			return await(existing);
+		}
+
+		try {
+			V result = call.call();
+			future.complete(result);
+			return result;
+		}
+		catch (Exception e) {
+			future.completeExceptionally(e);
+			throw CFMLEngineFactory.getInstance().getCastUtil().toPageException(e);
+		}
+		finally {
+			calls.remove(key, future);
+		}
+	}
+
+	/**
+	 * calls coming in after this do not join a call for that key that is currently running
+	 */
+	public void forget(String key) {
+		calls.remove(key);
+	}
+
+	/**
+	 * number of calls that got the result of an other call instead of executing themselves
+	 */
+	public long shared() {
+		return shared.sum();
+	}
+
+	private static <V> V await(CompletableFuture<V> future) throws PageException {
+		try {
+			return future.get();
+		}
+		catch (ExecutionException e) {
+			throw CFMLEngineFactory.getInstance().getCastUtil().toPageException(e.getCause());
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw CFMLEngineFactory.getInstance().getCastUtil().toPageException(e);
+		}
+	}
+
+	private static final class Flight<V> extends CompletableFuture<V> {
+		private final Thread owner;
+
+		private Flight(Thread owner) {
+			this.owner = owner;
+		}
+	}
+
+	public interface Call<V> {
+		public V call() throws Exception;
+	}
+}
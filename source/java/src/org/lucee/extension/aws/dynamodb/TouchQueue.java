@@ -0,0 +1,165 @@
+package org.lucee.extension.aws.dynamodb;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import org.lucee.extension.aws.dynamodb.util.AsyncUtil;
+
+import lucee.commons.io.log.Log;
+import lucee.loader.engine.CFMLEngineFactory;
+import lucee.runtime.type.Struct;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+
+/**
+ * extends the lifetime of entries with an idle time when they are read (sliding expiration). Reads
+ * only queue the key, a key is touched at most once per interval, the queue is sent in the background
+ * with one small update per key (no rewrite of the value), sent in parallel. The background flush
+ * does not wait for the updates, so it never blocks the scheduler thread.
+ */
+final class TouchQueue {
+
+	private final long interval;
+	private final int maxEntries;
+	private final int parallelism;
+	private final Toucher toucher;
+	private final Log log;
+	private final ScheduledFuture<?> task;
+
+	// last time a key was queued, keys not touched for an interval are dropped, at most maxEntries keys
+	private final ConcurrentHashMap<String, Long> touched = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<String, Touch> pending = new ConcurrentHashMap<>();
+	// a background flush is skipped while the previous one is still in flight
+	private final AtomicBoolean flushing = new AtomicBoolean();
+
+	private final LongAdder queued = new LongAdder();
+	private final LongAdder sent = new LongAdder();
+	private final LongAdder dropped = new LongAdder();
+	private final LongAdder skipped = new LongAdder();
+	private final LongAdder failed = new LongAdder();
+
+	public TouchQueue(long interval, int maxEntries, int parallelism, Toucher toucher, ScheduledExecutorService scheduler, Log log) {
+		this.interval = interval;
+		this.maxEntries = maxEntries;
+		this.parallelism = parallelism;
+		this.toucher = toucher;
+		this.log = log;
+		long delay = Math.min(interval, 1000L);
+		this.task = scheduler.scheduleWithFixedDelay(this::flushQuietly, delay, delay, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * queues the key, unless it was queued within the interval already
+	 */
+	public void touch(String key, long idle, boolean expires) {
+		long now = System.currentTimeMillis();
+		Long last = touched.get(key);
+		if (last != null && now - last < interval) return;
+		if (last == null && touched.size() >= maxEntries) {
+			dropped.increment();
+			return;
+		}
+		touched.put(key, now);
+		if (pending.put(key, new Touch(idle, expires)) == null) queued.increment();
+	}
+
+	/**
+	 * a touched key that got modified locally is not touched anymore
+	 */
+	public void discard(String key) {
+		pending.remove(key);
+	}
+
+	/**
+	 * sends all queued touches now and waits for them
+	 */
+	public void flush() throws Exception {
+		AsyncUtil.await(flushAsync());
+	}
+
+	/**
+	 * sends all queued touches, the returned future completes once they are sent
+	 */
+	private CompletableFuture<?> flushAsync() {
+		long now = System.currentTimeMillis();
+		List<Supplier<CompletableFuture<Void>>> tasks = new ArrayList<>();
+		Iterator<Map.Entry<String, Touch>> it = pending.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<String, Touch> e = it.next();
+			it.remove();
+			String key = e.getKey();
+			Touch t = e.getValue();
+			tasks.add(() -> toucher.touch(key, t.idle, t.expires, now).handle((v, ex) -> {
+				if (ex == null) sent.increment();
+				// the entry was removed or replaced in the meantime
+				else if (AsyncUtil.unwrap(ex) instanceof ConditionalCheckFailedException) skipped.increment();
+				else failed.increment();
+				return null;
+			}));
+		}
+		touched.values().removeIf(last -> now - last >= interval);
+		if (tasks.isEmpty()) return CompletableFuture.completedFuture(null);
+		return AsyncUtil.runAll(tasks, parallelism);
+	}
+
+	public void close() throws Exception {
+		task.cancel(false);
+		flush();
+	}
+
+	public Struct getInfo() {
+		Struct info = CFMLEngineFactory.getInstance().getCreationUtil().createStruct(Struct.TYPE_LINKED);
+		info.setEL("interval", interval);
+		info.setEL("queueDepth", pending.size());
+		info.setEL("queued", queued.sum());
+		info.setEL("sent", sent.sum());
+		info.setEL("dropped", dropped.sum());
+		info.setEL("skipped", skipped.sum());
+		info.setEL("failed", failed.sum());
+		return info;
+	}
+
+	private void flushQuietly() {
+		if (!flushing.compareAndSet(false, true)) return;
+		CompletableFuture<?> future;
+		try {
+			future = flushAsync();
+		}
+		catch (Exception e) {
+			flushing.set(false);
+			if (log != null) log.error("dynamodb-cache", "touch flush failed", e);
+			return;
+		}
+		future.whenComplete((v, e) -> {
+			flushing.set(false);
+			if (e != null && log != null) log.error("dynamodb-cache", "touch flush failed", AsyncUtil.unwrap(e));
+		});
+	}
+
+	private static final class Touch {
+		private final long idle;
+		private final boolean expires;
+
+		private Touch(long idle, boolean expires) {
+			this.idle = idle;
+			this.expires = expires;
+		}
+	}
+
+	public interface Toucher {
+		/**
+		 * extends the lifetime of the entry to now plus its idle time, the returned future fails if the
+		 * entry no longer exists or was replaced by an entry with an other idle time
+		 */
+		public CompletableFuture<Void> touch(String key, long idle, boolean expires, long now);
+	}
+}
@@ -0,0 +1,306 @@
+package org.lucee.extension.aws.dynamodb;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import lucee.commons.io.log.Log;
+import lucee.loader.engine.CFMLEngineFactory;
+import lucee.runtime.type.Struct;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+/**
+ * buffers writes locally and flushes them in the background with batch writes. Repeated writes of
+ * the same key are collapsed into one, as long as they were not flushed yet. Pending writes (also the
+ * ones currently flushed) are visible to reads through {@link #get(String)}.
+ */
+final class WriteBehind {
+
+	// a batch that fails is retried with the next flushes, after that the writes are dropped
+	private static final int MAX_ATTEMPTS = 3;
+
+	private final int maxEntries;
+	private final long interval;
+	private final Writer writer;
+	private final Log log;
+	private final ScheduledExecutorService scheduler;
+	private final ScheduledFuture<?> task;
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition notFull = lock.newCondition();
+	private LinkedHashMap<String, Pending> buffer = new LinkedHashMap<>();
+	private Map<String, Pending> inFlight = Collections.emptyMap();
+	// keys of the batch currently flushed that got removed or overwritten directly, a failed batch does not put them back
+	private final Set<String> discarded = new HashSet<>();
+
+	// only one flush at a time, so the order of writes to the same key is kept
+	private final ReentrantLock flushLock = new ReentrantLock();
+	private final AtomicBoolean flushRequested = new AtomicBoolean();
+	private boolean closed;
+
+	private final LongAdder flushes = new LongAdder();
+	private final LongAdder flushed = new LongAdder();
+	private final LongAdder dropped = new LongAdder();
+	private final LongAdder flushTime = new LongAdder();
+	private volatile long lastFlushTime;
+	private volatile long maxFlushTime;
+
+	public WriteBehind(int maxEntries, long interval, Writer writer, ScheduledExecutorService scheduler, Log log) {
+		this.maxEntries = maxEntries;
+		this.interval = interval;
+		this.writer = writer;
+		this.scheduler = scheduler;
+		this.log = log;
+		this.task = scheduler.scheduleWithFixedDelay(this::flushQuietly, interval, interval, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * buffers the item, when the buffer is full it waits up to the given timeout for space. Returns
+	 * false if the item could not be buffered (buffer full or closed), in that case the caller has to
+	 * write it directly.
+	 */
+	public boolean offer(String key, Map<String, AttributeValue> item, long timeout) throws InterruptedException {
+		lock.lock();
+		try {
+			if (closed) return false;
+			Pending pending = buffer.get(key);
+			if (pending != null) {
+				buffer.put(key, new Pending(item));
+				return true;
+			}
+
+			long nanos = TimeUnit.MILLISECONDS.toNanos(timeout);
+			while (buffer.size() >= maxEntries) {
+				requestFlush();
+				if (nanos <= 0) return false;
+				nanos = notFull.awaitNanos(nanos);
+				if (closed) return false;
+			}
+			buffer.put(key, new Pending(item));
+			if (buffer.size() >= maxEntries) requestFlush();
+			return true;
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * returns the pending item for that key or null if there is none
+	 */
+	public Map<String, AttributeValue> get(String key) {
+		lock.lock();
+		try {
+			Pending pending = buffer.get(key);
+			if (pending == null) pending = inFlight.get(key);
+			return pending == null ? null : pending.item;
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * drops a pending write for that key, if the key is part of the batch currently flushed, it waits
+	 * until that batch is written, so a following direct write is not overwritten by it
+	 */
+	public void discard(String key) {
+		boolean wait;
+		lock.lock();
+		try {
+			if (buffer.remove(key) != null) notFull.signalAll();
+			wait = inFlight.containsKey(key);
+			if (wait) discarded.add(key);
+		}
+		finally {
+			lock.unlock();
+		}
+		if (wait) {
+			flushLock.lock();
+			flushLock.unlock();
+		}
+	}
+
+	/**
+	 * drops all pending writes
+	 */
+	public void clear() {
+		lock.lock();
+		try {
+			buffer.clear();
+			discarded.addAll(inFlight.keySet());
+			notFull.signalAll();
+		}
+		finally {
+			lock.unlock();
+		}
+		flushLock.lock();
+		flushLock.unlock();
+	}
+
+	/**
+	 * writes all pending items now
+	 */
+	public void flush() throws Exception {
+		flushLock.lock();
+		try {
+			Map<String, Pending> batch;
+			lock.lock();
+			try {
+				flushRequested.set(false);
+				if (buffer.isEmpty()) return;
+				batch = buffer;
+				buffer = new LinkedHashMap<>();
+				inFlight = batch;
+				notFull.signalAll();
+			}
+			finally {
+				lock.unlock();
+			}
+
+			List<Map<String, AttributeValue>> items = new ArrayList<>(batch.size());
+			for (Pending p: batch.values()) {
+				items.add(p.item);
+			}
+
+			long start = System.nanoTime();
+			try {
+				writer.write(items);
+				flushed.add(items.size());
+			}
+			catch (Exception e) {
+				retry(batch);
+				throw e;
+			}
+			finally {
+				long time = System.nanoTime() - start;
+				flushes.increment();
+				flushTime.add(time);
+				lastFlushTime = time;
+				if (time > maxFlushTime) maxFlushTime = time;
+
+				lock.lock();
+				try {
+					inFlight = Collections.emptyMap();
+					discarded.clear();
+				}
+				finally {
+					lock.unlock();
+				}
+			}
+		}
+		finally {
+			flushLock.unlock();
+		}
+	}
+
+	/**
+	 * stops the background flushing and writes what is still pending, after that nothing is buffered
+	 * anymore
+	 */
+	public void close() throws Exception {
+		lock.lock();
+		try {
+			closed = true;
+			notFull.signalAll();
+		}
+		finally {
+			lock.unlock();
+		}
+		task.cancel(false);
+		flush();
+	}
+
+	public Struct getInfo() {
+		Struct info = CFMLEngineFactory.getInstance().getCreationUtil().createStruct(Struct.TYPE_LINKED);
+		int depth;
+		lock.lock();
+		try {
+			depth = buffer.size();
+		}
+		finally {
+			lock.unlock();
+		}
+		long count = flushes.sum();
+		info.setEL("queueDepth", depth);
+		info.setEL("maxEntries", maxEntries);
+		info.setEL("interval", interval);
+		info.setEL("flushes", count);
+		info.setEL("flushedItems", flushed.sum());
+		info.setEL("droppedItems", dropped.sum());
+		info.setEL("lastFlushLatency", lastFlushTime / 1000000D);
+		info.setEL("maxFlushLatency", maxFlushTime / 1000000D);
+		info.setEL("avgFlushLatency", count == 0 ? 0D : flushTime.sum() / count / 1000000D);
+		return info;
+	}
+
+	private void requestFlush() {
+		if (flushRequested.compareAndSet(false, true)) {
+			scheduler.execute(this::flushQuietly);
+		}
+	}
+
+	private void flushQuietly() {
+		try {
+			flush();
+		}
+		catch (Exception e) {
+			if (log != null) log.error("dynamodb-cache", "write behind flush failed", e);
+		}
+	}
+
+	/**
+	 * puts the items of a failed batch back, unless they got replaced by a newer write or discarded in
+	 * the meantime
+	 */
+	private void retry(Map<String, Pending> batch) {
+		lock.lock();
+		try {
+			for (Entry<String, Pending> e: batch.entrySet()) {
+				Pending p = e.getValue();
+				if (discarded.contains(e.getKey())) continue;
+				if (p.attempts + 1 >= MAX_ATTEMPTS || buffer.containsKey(e.getKey())) {
+					if (!buffer.containsKey(e.getKey())) {
+						dropped.increment();
+						if (log != null) log.error("dynamodb-cache", "write behind dropped the write of key [" + e.getKey() + "] after " + MAX_ATTEMPTS + " failed attempts");
+					}
+					continue;
+				}
+				buffer.put(e.getKey(), new Pending(p.item, p.attempts + 1));
+			}
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	private static final class Pending {
+		private final Map<String, AttributeValue> item;
+		private final int attempts;
+
+		private Pending(Map<String, AttributeValue> item) {
+			this(item, 0);
+		}
+
+		private Pending(Map<String, AttributeValue> item, int attempts) {
+			this.item = item;
+			this.attempts = attempts;
+		}
+	}
+
+	public interface Writer {
+		public void write(List<Map<String, AttributeValue>> items) throws Exception;
+	}
+}
@@ -0,0 +1,77 @@
+package org.lucee.extension.aws.dynamodb.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import lucee.loader.engine.CFMLEngineFactory;
+import lucee.runtime.exp.PageException;
+
+public class AsyncUtil {
+
+	/**
+	 * starts the given tasks with at most the given number of them running at the same time, a task is
+	 * started as soon as an other one is done (no threads are blocked for that). The result contains the
+	 * results of all tasks in no specific order.
+	 */
+	public static <T> CompletableFuture<List<T>> runAll(List<Supplier<CompletableFuture<T>>> tasks, int parallelism) {
+		List<T> results = Collections.synchronizedList(new ArrayList<>(tasks.size()));
+		AtomicInteger next = new AtomicInteger();
+		CompletableFuture<?>[] lanes = new CompletableFuture<?>[Math.max(1, Math.min(parallelism, tasks.size()))];
+		for (int i = 0; i < lanes.length; i++) {
+			lanes[i] = lane(tasks, next, results);
+		}
+		return CompletableFuture.allOf(lanes).thenApply(v -> results);
+	}
+
+	private static <T> CompletableFuture<Void> lane(List<Supplier<CompletableFuture<T>>> tasks, AtomicInteger next, List<T> results) {
+		int index = next.getAndIncrement();
+		if (index >= tasks.size()) return CompletableFuture.completedFuture(null);
+		return tasks.get(index).get().thenCompose(result -> {
+			results.add(result);
+			return lane(tasks, next, results);
+		});
+	}
+
+	/**
+	 * returns a future that completes after the given time without blocking a thread while waiting
+	 */
+	public static CompletableFuture<Void> delay(long millis) {
+		return CompletableFuture.runAsync(() -> {}, CompletableFuture.delayedExecutor(millis, TimeUnit.MILLISECONDS));
+	}
+
+	public static <T> CompletableFuture<T> failed(Throwable t) {
+		CompletableFuture<T> future = new CompletableFuture<>();
+		future.completeExceptionally(t);
+		return future;
+	}
+
+	/**
+	 * waits for the result of the given future
+	 */
+	public static <T> T await(CompletableFuture<T> future) throws PageException {
+		try {
+			return future.get();
+		}
+		catch (ExecutionException e) {
+			throw CFMLEngineFactory.getInstance().getCastUtil().toPageException(unwrap(e.getCause()));
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw CFMLEngineFactory.getInstance().getCastUtil().toPageException(e);
+		}
+	}
+
+	public static Throwable unwrap(Throwable t) {
+		while ((t instanceof CompletionException || t instanceof ExecutionException) && t.getCause() != null) {
+			t = t.getCause();
+		}
+		return t;
+	}
+}
@@ -211,6 +211,31 @@ public class Coder {
 		}
 	}
 
+	/**
+	 * approximated size of the raw attribute value in bytes, without decoding it
+	 */
+	public static long sizeOf(AttributeValue valueAttr) {
+		if (valueAttr == null) return 0;
+		if (valueAttr.s() != null) return valueAttr.s().length();
+		if (valueAttr.n() != null) return valueAttr.n().length();
+		if (valueAttr.b() != null) return valueAttr.b().asByteArrayUnsafe().length;
+		if (valueAttr.hasM()) {
+			long size = 0;
+			for (Entry<String, AttributeValue> e: valueAttr.m().entrySet()) {
+				size += e.getKey().length() + sizeOf(e.getValue());
+			}
+			return size;
+		}
+		if (valueAttr.hasL()) {
+			long size = 0;
+			for (AttributeValue av: valueAttr.l()) {
+				size += sizeOf(av);
+			}
+			return size;
+		}
+		return 1;
+	}
+
 	private static boolean isObjectStream(byte[] data) {
 		if (data == null || data.length < OBJECT_STREAM_HEADER.length) return false;
 		for (int i = 0; i < OBJECT_STREAM_HEADER.length; i++) {
@@ -1,14 +1,18 @@
 package org.lucee.extension.aws.dynamodb.util;
 
 import java.io.IOException;
+import java.lang.reflect.Constructor;
 import java.lang.reflect.Method;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.lucee.extension.aws.dynamodb.DynamoDBCache;
 
 import lucee.commons.io.cache.Cache;
 import lucee.commons.io.cache.CacheEntry;
+import lucee.commons.io.cache.CacheKeyFilter;
 import lucee.loader.engine.CFMLEngine;
 import lucee.loader.engine.CFMLEngineFactory;
 import lucee.runtime.PageContext;
@@ -21,6 +25,8 @@ public class CommonUtil {
 	private static final Class[] GET_CACHE_PARAMS = new Class[] { PageContext.class, String.class, int.class };
 	public static final int CACHE_TYPE_OBJECT = 1;
 	private static Method getCache;
+	private static Method key;
+	private static Constructor<?> wildCardFilter;
 
 	public static String createToken(String prefix, String name) {
 		String str = prefix + ":" + name;
@@ -31,6 +37,18 @@ public class CommonUtil {
 		return lock;
 	}
 
+	/**
+	 * creates daemon threads, so a pool that is not shut down does not keep the JVM alive
+	 */
+	public static ThreadFactory createThreadFactory(final String name) {
+		final AtomicInteger count = new AtomicInteger();
+		return r -> {
+			Thread t = new Thread(r, name + "-" + count.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		};
+	}
+
 	public static Struct getInfo(CacheEntry ce) {
 		Struct info = CFMLEngineFactory.getInstance().getCreationUtil().createStruct();
 		info.setEL("key", ce.getKey());
@@ -68,6 +86,46 @@ public class CommonUtil {
 
 	}
 
+	/**
+	 * normalizes a key the same way the cache functions of Lucee (cachePut, cacheGet ...) do
+	 */
+	public static String toCacheKey(PageContext pc, String k) throws PageException {
+		CFMLEngine eng = CFMLEngineFactory.getInstance();
+
+		try {
+			ClassLoader cl = pc.getClass().getClassLoader();
+			if (key == null || !key.getDeclaringClass().getClassLoader().equals(cl)) {
+				Class<?> cacheUtil = eng.getClassUtil().loadClass(cl, "lucee.runtime.cache.CacheUtil");
+				key = cacheUtil.getMethod("key", new Class<?>[] { String.class });
+			}
+			return (String) key.invoke(null, new Object[] { k });
+		}
+		catch (Exception e) {
+			throw eng.getCastUtil().toPageException(e);
+		}
+	}
+
+	/**
+	 * creates the (case insensitive) wildcard filter of the Lucee core for the given pattern, the same
+	 * filter the cache functions use. Returns null if the pattern accepts every key.
+	 */
+	public static CacheKeyFilter toKeyFilter(PageContext pc, String pattern) throws PageException {
+		if (pattern == null || pattern.trim().isEmpty() || "*".equals(pattern.trim())) return null;
+		CFMLEngine eng = CFMLEngineFactory.getInstance();
+
+		try {
+			ClassLoader cl = pc.getClass().getClassLoader();
+			if (wildCardFilter == null || !wildCardFilter.getDeclaringClass().getClassLoader().equals(cl)) {
+				Class<?> clazz = eng.getClassUtil().loadClass(cl, "lucee.runtime.cache.util.WildCardFilter");
+				wildCardFilter = clazz.getConstructor(new Class<?>[] { String.class, boolean.class });
+			}
+			return (CacheKeyFilter) wildCardFilter.newInstance(new Object[] { pattern.trim(), Boolean.TRUE });
+		}
+		catch (Exception e) {
+			throw eng.getCastUtil().toPageException(e);
+		}
+	}
+
 	private static Cache getCache(PageContext pc, String cacheName) throws PageException {
 		CFMLEngine eng = CFMLEngineFactory.getInstance();
 